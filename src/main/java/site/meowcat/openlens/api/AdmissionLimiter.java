@@ -0,0 +1,53 @@
+package site.meowcat.openlens.api;
+
+import io.javalin.http.Handler;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps how many expensive requests run at once. A request that cannot get a
+ * slot within a short wait is turned away with 503 and Retry-After, rather
+ * than queueing behind work that is already running late.
+ */
+class AdmissionLimiter {
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    AdmissionLimiter(int maxConcurrent, long maxWaitMs) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Wrap a handler so it only runs while holding a slot
+     */
+    Handler limit(Handler handler) {
+        return ctx -> {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                ctx.header("Retry-After", "1");
+                ctx.status(503).json(Map.of("error", "Server is busy, try again shortly"));
+                return;
+            }
+            try {
+                handler.handle(ctx);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    int active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+}
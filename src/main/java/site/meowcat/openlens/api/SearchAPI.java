@@ -2,9 +2,15 @@ package site.meowcat.openlens.api;
 
 import site.meowcat.openlens.config.DatabaseConfig;
 import site.meowcat.openlens.search.SearchEngine;
+import site.meowcat.openlens.stats.CrawlStats;
+import com.google.gson.Gson;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.json.JsonMapper;
 
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,19 +19,40 @@ import java.util.Map;
  * REST API server for the search engine
  */
 public class SearchAPI {
+    // Searches allowed to run at once, and how long a request may wait for a slot before being shed.
+    // No more than the pool has connections, so a database search never queues for one.
+    private static final int MAX_CONCURRENT_SEARCHES = Math.min(
+            Integer.getInteger("openlens.api.maxConcurrentSearches", 16), DatabaseConfig.MAIN_POOL_SIZE);
+    private static final long ADMISSION_WAIT_MS = Long.getLong("openlens.api.admissionWaitMs", 50);
+    // Results a single search may ask for
+    private static final int MAX_LIMIT = 100;
+
     private final SearchEngine searchEngine;
     private final DatabaseConfig dbConfig;
+    private final String host;
+    private final int port;
+    private final AdmissionLimiter searchLimiter = new AdmissionLimiter(MAX_CONCURRENT_SEARCHES, ADMISSION_WAIT_MS);
+    private Javalin app;
 
     public SearchAPI() {
+        this("localhost", 7000);
+    }
+
+    public SearchAPI(String host, int port) {
         this.dbConfig = DatabaseConfig.getInstance();
         this.searchEngine = new SearchEngine();
+        this.host = host;
+        this.port = port;
     }
 
     public void start() {
-        int port = 7000;
-        String host = "localhost";
+        searchEngine.loadIndex();
+        // Pick up counters flushed by the crawler
+        CrawlStats.getInstance().startSyncing(CrawlStats.DEFAULT_SYNC_MS);
+
+        app = Javalin.create(config -> {
+            config.jsonMapper(new GsonMapper());
 
-        Javalin app = Javalin.create(config -> {
             // Enable CORS for frontend
             config.plugins.enableCors(cors -> {
                 cors.add(it -> {
@@ -35,31 +62,42 @@ public class SearchAPI {
         }).start(host, port);
 
         System.out.println("=== Search Engine API ===");
-        System.out.println("Server started on http://" + host + ":" + port);
+        System.out.println("Server started on http://" + host + ":" + app.port());
         System.out.println("\nEndpoints:");
         System.out.println("  GET /api/search?q=<query>  - Search for pages");
         System.out.println("  GET /api/stats             - Get database statistics");
         System.out.println();
 
-        // Search endpoint
-        app.get("/api/search", this::handleSearch);
+        // Search endpoint; the only one that can be slow, so the only one that is rate limited
+        app.get("/api/search", searchLimiter.limit(this::handleSearch));
 
-        // Stats endpoint
+        // Stats endpoint (served from memory)
         app.get("/api/stats", this::handleStats);
 
-        // Health check
-        app.get("/api/health", ctx -> {
-            ctx.json(Map.of("status", "ok"));
-        });
+        // Health check, on its own connection pool so it still answers while searches are saturated
+        app.get("/api/health", this::handleHealth);
 
         // Add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\nShutting down API server...");
             app.stop();
+            searchEngine.close();
             dbConfig.close();
         }));
     }
 
+    /**
+     * The port the server is listening on, useful when started on port 0
+     */
+    public int port() {
+        return app.port();
+    }
+
+    public void stop() {
+        app.stop();
+        searchEngine.close();
+    }
+
     private void handleSearch(Context ctx) {
         String query = ctx.queryParam("q");
 
@@ -70,8 +108,26 @@ public class SearchAPI {
         }
 
         String limitParam = ctx.queryParam("limit");
-        int limit = limitParam != null ? Integer.parseInt(limitParam) : 10;
-        List<SearchEngine.SearchResult> results = searchEngine.search(query, limit);
+        int limit;
+        try {
+            limit = limitParam != null ? Integer.parseInt(limitParam.trim()) : 10;
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(Map.of(
+                    "error", "Query parameter 'limit' must be a number"));
+            return;
+        }
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<SearchEngine.SearchResult> results;
+        try {
+            results = searchEngine.search(query, limit, SearchEngine.DEFAULT_QUERY_TIMEOUT_MS);
+        } catch (SearchEngine.SearchTimeoutException e) {
+            ctx.status(504).json(Map.of("error", "Search timed out"));
+            return;
+        } catch (SearchEngine.SearchUnavailableException e) {
+            ctx.header("Retry-After", "1");
+            ctx.status(503).json(Map.of("error", "Server is busy, try again shortly"));
+            return;
+        }
 
         Map<String, Object> response = new HashMap<>();
         response.put("query", query);
@@ -81,16 +137,53 @@ public class SearchAPI {
         ctx.json(response);
     }
 
+    private void handleHealth(Context ctx) {
+        boolean databaseUp;
+        try (Connection conn = dbConfig.getAdminConnection()) {
+            databaseUp = conn.isValid(1);
+        } catch (SQLException e) {
+            databaseUp = false;
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", databaseUp ? "ok" : "unavailable");
+        response.put("activeSearches", searchLimiter.active());
+        response.put("rejectedSearches", searchLimiter.rejected());
+        ctx.status(databaseUp ? 200 : 503).json(response);
+    }
+
     private void handleStats(Context ctx) {
         SearchEngine.DatabaseStats stats = searchEngine.getStats();
 
         Map<String, Object> response = new HashMap<>();
         response.put("totalPages", stats.totalPages);
+        response.put("scrapedPages", stats.scrapedPages);
+        response.put("queuedPages", stats.queuedPages);
+        response.put("images", stats.images);
+        response.put("hosts", stats.hosts);
         response.put("lastScraped", stats.lastScraped != null ? stats.lastScraped.toString() : null);
+        response.put("topHosts", stats.topHosts);
 
         ctx.json(response);
     }
 
+    /**
+     * Serializes responses with Gson, since Javalin only finds Jackson on its own
+     */
+    private static class GsonMapper implements JsonMapper {
+        private final Gson gson = new Gson();
+
+        @Override
+        public String toJsonString(Object obj, Type type) {
+            return gson.toJson(obj, type);
+        }
+
+        @Override
+        public <T> T fromJsonString(String json, Type targetType) {
+            return gson.fromJson(json, targetType);
+        }
+    }
+
     public static void main(String[] args) {
         SearchAPI api = new SearchAPI();
         api.start();
@@ -0,0 +1,51 @@
+package site.meowcat.openlens.archive;
+
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One fetched HTTP response as stored in the fetch archive
+ */
+public class ArchivedResponse {
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset\\s*=\\s*[\"']?([^\\s;\"']+)");
+
+    /** The page this response was fetched for */
+    public final String url;
+    /** Where the response was served from after redirects; relative links resolve against it */
+    public final String targetUrl;
+    public final long fetchedAt;
+    public final int status;
+    public final String contentType;
+    /** The body exactly as received, in the charset its Content-Type declares */
+    public final byte[] body;
+
+    public ArchivedResponse(String url, String targetUrl, long fetchedAt, int status, String contentType,
+            byte[] body) {
+        this.url = url;
+        this.targetUrl = targetUrl;
+        this.fetchedAt = fetchedAt;
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    /**
+     * The charset named in the Content-Type header, or null if there is none
+     * (or none Java supports) and it has to be detected from the body
+     */
+    public String charset() {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.isSupported(matcher.group(1)) ? matcher.group(1) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
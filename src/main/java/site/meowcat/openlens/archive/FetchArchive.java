@@ -0,0 +1,317 @@
+package site.meowcat.openlens.archive;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only archive of raw fetched responses, so pages can be re-extracted
+ * without going back to the network.
+ *
+ * Records are written in WARC format, each one as its own gzip member, into
+ * segment files (fetch-00001.warc.gz, ...) that roll over at a fixed size.
+ * Every segment has a companion .idx file with one line per record:
+ * offset, compressed length, fetch time and URL, tab separated. A record is
+ * only visible once its index line has been written. The index names the page
+ * a record belongs to; its WARC-Target-URI is where the body was served from
+ * after redirects.
+ */
+public class FetchArchive implements AutoCloseable {
+    public static final String DEFAULT_DIR = System.getProperty("openlens.archive.dir", "archive");
+    public static final long MAX_SEGMENT_BYTES = 128L * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".warc.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path dir;
+    private int segmentNumber;
+    private FileChannel segment;
+    private Writer index;
+
+    public FetchArchive(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        List<Path> existing = listSegments(dir);
+        this.segmentNumber = existing.isEmpty() ? 1 : segmentNumber(existing.get(existing.size() - 1));
+        openSegment();
+    }
+
+    /**
+     * Append one response to the archive for the page url. targetUrl is the URL
+     * it was finally served from, and body is the payload as received, before any decoding.
+     */
+    public synchronized void append(String url, String targetUrl, int status, String contentType, byte[] body)
+            throws IOException {
+        long fetchedAt = System.currentTimeMillis();
+        byte[] record = compress(toWarc(targetUrl, fetchedAt, status, contentType, body));
+
+        if (segment.size() > 0 && segment.size() + record.length > MAX_SEGMENT_BYTES) {
+            close();
+            segmentNumber++;
+            openSegment();
+        }
+
+        long offset = segment.size();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        index.write(offset + "\t" + record.length + "\t" + fetchedAt + "\t" + url + "\n");
+        index.flush();
+    }
+
+    private void openSegment() throws IOException {
+        Path indexFile = indexFile(segmentFile(segmentNumber));
+        trimTornLine(indexFile);
+        segment = FileChannel.open(segmentFile(segmentNumber),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Cut off a partial last line left by a crash mid-write, so the next line
+     * appended is not glued onto it. Its record is lost, as it was never visible.
+     */
+    private static void trimTornLine(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer one = ByteBuffer.allocate(1);
+            while (end > 0) {
+                one.clear();
+                channel.read(one, end - 1);
+                if (one.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < channel.size()) {
+                System.err.println("Warning: Dropping torn last line of " + indexFile);
+                channel.truncate(end);
+            }
+        }
+    }
+
+    private Path segmentFile(int number) {
+        return dir.resolve(String.format("fetch-%05d%s", number, SEGMENT_SUFFIX));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private static byte[] toWarc(String url, long fetchedAt, int status, String contentType, byte[] httpBody) {
+        StringBuilder http = new StringBuilder();
+        http.append("HTTP/1.1 ").append(status).append("\r\n");
+        if (contentType != null) {
+            http.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        http.append("\r\n");
+        byte[] httpHeader = http.toString().getBytes(StandardCharsets.UTF_8);
+
+        String warcHeader = "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Target-URI: " + url + "\r\n"
+                + "WARC-Date: " + Instant.ofEpochMilli(fetchedAt) + "\r\n"
+                + "WARC-Record-ID: <urn:uuid:" + UUID.randomUUID() + ">\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "Content-Length: " + (httpHeader.length + httpBody.length) + "\r\n"
+                + "\r\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(httpBody.length + 512);
+        out.writeBytes(warcHeader.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(httpHeader);
+        out.writeBytes(httpBody);
+        out.writeBytes("\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Location of one record, as listed in a segment's .idx file
+     */
+    public static class Entry {
+        public final Path file;
+        public final long offset;
+        public final int length;
+        public final long fetchedAt;
+        public final String url;
+
+        Entry(Path file, long offset, int length, long fetchedAt, String url) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.fetchedAt = fetchedAt;
+            this.url = url;
+        }
+    }
+
+    public static List<Path> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * The most recent archived fetch of every URL, grouped by segment file
+     * and ordered by offset so each file can be read sequentially
+     */
+    public static Map<Path, List<Entry>> latestEntries(Path dir) throws IOException {
+        Map<String, Entry> latest = new HashMap<>();
+        for (Path file : listSegments(dir)) {
+            Path idx = indexFile(file);
+            if (!Files.exists(idx)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(idx, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\t", 4);
+                    if (parts.length < 4) {
+                        continue; // Torn write at the end of the index
+                    }
+                    Entry entry;
+                    try {
+                        entry = new Entry(file, Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                                Long.parseLong(parts[2]), parts[3]);
+                    } catch (NumberFormatException e) {
+                        // A torn line that a later append was written onto; skip rather than lose the archive
+                        System.err.println("Warning: Skipping unreadable line in " + idx);
+                        continue;
+                    }
+                    latest.merge(entry.url, entry, (a, b) -> b.fetchedAt >= a.fetchedAt ? b : a);
+                }
+            }
+        }
+
+        Map<Path, List<Entry>> byFile = new HashMap<>();
+        for (Entry entry : latest.values()) {
+            byFile.computeIfAbsent(entry.file, f -> new ArrayList<>()).add(entry);
+        }
+        for (List<Entry> entries : byFile.values()) {
+            entries.sort((a, b) -> Long.compare(a.offset, b.offset));
+        }
+        return byFile;
+    }
+
+    /**
+     * Read and decode a single record
+     */
+    public static ArchivedResponse read(FileChannel channel, Entry entry) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(entry.length);
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, entry.offset + compressed.position()) < 0) {
+                throw new IOException("Truncated archive record for " + entry.url);
+            }
+        }
+
+        byte[] record;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+            record = in.readAllBytes();
+        }
+
+        int pos = 0;
+        int contentLength = -1;
+        String targetUrl = entry.url;
+        // WARC headers
+        while (true) {
+            int end = indexOfCrlf(record, pos);
+            String line = new String(record, pos, end - pos, StandardCharsets.UTF_8);
+            pos = end + 2;
+            if (line.isEmpty()) {
+                break;
+            }
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            } else if (line.regionMatches(true, 0, "WARC-Target-URI:", 0, 16)) {
+                targetUrl = line.substring(16).trim();
+            }
+        }
+        int blockEnd = contentLength >= 0 ? pos + contentLength : record.length;
+
+        // HTTP status line and headers
+        int status = 0;
+        String contentType = null;
+        boolean statusLine = true;
+        while (pos < blockEnd) {
+            int end = indexOfCrlf(record, pos);
+            String line = new String(record, pos, end - pos, StandardCharsets.UTF_8);
+            pos = end + 2;
+            if (line.isEmpty()) {
+                break;
+            }
+            if (statusLine) {
+                String[] parts = line.split(" ");
+                status = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+                statusLine = false;
+            } else if (line.regionMatches(true, 0, "Content-Type:", 0, 13)) {
+                contentType = line.substring(13).trim();
+            }
+        }
+
+        byte[] body = java.util.Arrays.copyOfRange(record, pos, blockEnd);
+        return new ArchivedResponse(entry.url, targetUrl, entry.fetchedAt, status, contentType, body);
+    }
+
+    private static Path indexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static int segmentNumber(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Integer.parseInt(name.substring("fetch-".length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int indexOfCrlf(byte[] data, int from) throws IOException {
+        for (int i = from; i + 1 < data.length; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IOException("Malformed archive record");
+    }
+}
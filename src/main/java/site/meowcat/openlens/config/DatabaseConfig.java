@@ -2,18 +2,35 @@ package site.meowcat.openlens.config;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import site.meowcat.openlens.stats.CrawlStats;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Database configuration using H2 (Local File Database)
  * No limits, no cloud configuration needed.
  */
 public class DatabaseConfig {
+    // Overridable so tools such as the load harness can use a throwaway database
+    private static final String JDBC_URL = System.getProperty("openlens.db.url",
+            "jdbc:h2:./scraper_db;MODE=PostgreSQL");
+    /** Connections in the main pool, which crawling and database searches share */
+    public static final int MAIN_POOL_SIZE = Integer.getInteger("openlens.db.poolSize", 10);
+
     private static DatabaseConfig instance;
     private HikariDataSource dataSource;
+    // Small separate pool for cheap queries (health checks, statistics) so they never queue behind searches
+    private HikariDataSource adminDataSource;
+    private final Map<String, Integer> hostIds = new ConcurrentHashMap<>();
 
     private DatabaseConfig() {
         initializeDataSource();
@@ -35,56 +52,127 @@ public class DatabaseConfig {
             throw new RuntimeException("H2 JDBC Driver not found", e);
         }
 
-        HikariConfig hikariConfig = new HikariConfig();
         // Use a local file database named 'scraper_db' in the current directory
-        hikariConfig.setJdbcUrl("jdbc:h2:./scraper_db;MODE=PostgreSQL");
+        dataSource = new HikariDataSource(poolConfig("openlens-main", MAIN_POOL_SIZE));
+        adminDataSource = new HikariDataSource(poolConfig("openlens-admin", 2));
+    }
+
+    private static HikariConfig poolConfig(String name, int size) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(name);
+        hikariConfig.setJdbcUrl(JDBC_URL);
         hikariConfig.setUsername("sa");
         hikariConfig.setPassword("");
 
-        hikariConfig.setMaximumPoolSize(10);
+        hikariConfig.setMaximumPoolSize(size);
+        // Fail fast instead of holding a request for Hikari's default 30 seconds
+        hikariConfig.setConnectionTimeout(5000);
 
         // Optimize for local file access
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
         hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-
-        dataSource = new HikariDataSource(hikariConfig);
+        return hikariConfig;
     }
 
     private void initializeSchema() {
         // Simplified schema for H2
         // Removed tsvector/full-text search triggers as we are doing Client-Side Search
+        // Pages are keyed by a 64-bit fingerprint of their URL (see UrlFingerprint)
+        // rather than the URL text, which keeps every per-URL lookup and join on an 8-byte key
+        String createHostsTable = """
+                CREATE TABLE IF NOT EXISTS hosts (
+                    id SERIAL PRIMARY KEY,
+                    name VARCHAR(255) UNIQUE NOT NULL,
+                    page_count BIGINT DEFAULT 0 NOT NULL,
+                    scraped_count BIGINT DEFAULT 0 NOT NULL
+                );
+                ALTER TABLE hosts ADD COLUMN IF NOT EXISTS page_count BIGINT DEFAULT 0 NOT NULL;
+                ALTER TABLE hosts ADD COLUMN IF NOT EXISTS scraped_count BIGINT DEFAULT 0 NOT NULL;
+                """;
+
         String createPagesTable = """
                 CREATE TABLE IF NOT EXISTS pages (
                     id SERIAL PRIMARY KEY,
-                    url TEXT UNIQUE NOT NULL,
+                    url_hash BIGINT NOT NULL,
+                    host_id INT,
+                    url TEXT NOT NULL,
                     title TEXT,
                     content TEXT,
-                    scraped_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    scraped_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    depth INT DEFAULT 0 NOT NULL,
+                    inlinks INT DEFAULT 0 NOT NULL,
+                    priority DOUBLE PRECISION DEFAULT 0 NOT NULL
                 );
+                ALTER TABLE pages ADD COLUMN IF NOT EXISTS depth INT DEFAULT 0 NOT NULL;
+                ALTER TABLE pages ADD COLUMN IF NOT EXISTS inlinks INT DEFAULT 0 NOT NULL;
+                ALTER TABLE pages ADD COLUMN IF NOT EXISTS priority DOUBLE PRECISION DEFAULT 0 NOT NULL;
                 """;
 
-        String createImagesTable = """
-                CREATE TABLE IF NOT EXISTS images (
+        // Each image URL is stored once, keyed by its fingerprint, however many pages show it;
+        // page_images says which pages do, with the alt text each page gives it
+        String createImagesTables = """
+                CREATE TABLE IF NOT EXISTS image_sources (
                     id SERIAL PRIMARY KEY,
-                    src TEXT NOT NULL,
+                    src_hash BIGINT UNIQUE NOT NULL,
+                    src TEXT NOT NULL
+                );
+                CREATE TABLE IF NOT EXISTS page_images (
+                    page_id INT NOT NULL,
+                    image_id INT NOT NULL,
                     alt TEXT,
-                    page_url TEXT,
-                    FOREIGN KEY (page_url) REFERENCES pages(url) ON DELETE CASCADE
+                    PRIMARY KEY (page_id, image_id),
+                    FOREIGN KEY (page_id) REFERENCES pages(id) ON DELETE CASCADE,
+                    FOREIGN KEY (image_id) REFERENCES image_sources(id)
+                );
+                """;
+
+        // Outgoing links of every stored page, by target fingerprint so targets need not be stored yet
+        String createLinksTable = """
+                CREATE TABLE IF NOT EXISTS links (
+                    src_id INT NOT NULL,
+                    dst_hash BIGINT NOT NULL,
+                    PRIMARY KEY (src_id, dst_hash),
+                    FOREIGN KEY (src_id) REFERENCES pages(id) ON DELETE CASCADE
+                );
+                """;
+
+        // Counters maintained by CrawlStats, so statistics never need a COUNT(*) over pages
+        String createStatsTable = """
+                CREATE TABLE IF NOT EXISTS crawl_stats (
+                    name VARCHAR(64) PRIMARY KEY,
+                    amount BIGINT NOT NULL
                 );
                 """;
 
         String createIndexes = """
-                CREATE INDEX IF NOT EXISTS idx_pages_url ON pages(url);
-                CREATE INDEX IF NOT EXISTS idx_images_page_url ON images(page_url);
+                CREATE UNIQUE INDEX IF NOT EXISTS idx_pages_url_hash ON pages(url_hash);
+                CREATE INDEX IF NOT EXISTS idx_pages_host_id ON pages(host_id);
+                CREATE INDEX IF NOT EXISTS idx_page_images_image_id ON page_images(image_id);
+                CREATE INDEX IF NOT EXISTS idx_hosts_page_count ON hosts(page_count);
+                CREATE INDEX IF NOT EXISTS idx_links_dst_hash ON links(dst_hash);
+                CREATE INDEX IF NOT EXISTS idx_pages_frontier ON pages(scraped_at NULLS FIRST, priority DESC);
                 """;
 
         try (Connection conn = getConnection();
                 Statement stmt = conn.createStatement()) {
 
+            stmt.execute(createHostsTable);
+            if (hasColumn(conn, "PAGES", "URL")) {
+                migrateUrlKeyedSchema(conn);
+            }
+            boolean needsPriorities = hasColumn(conn, "PAGES", "URL_HASH") && !hasColumn(conn, "PAGES", "INLINKS");
             stmt.execute(createPagesTable);
-            stmt.execute(createImagesTable);
+            stmt.execute(createImagesTables);
+            stmt.execute(createLinksTable);
+            stmt.execute(createStatsTable);
             stmt.execute(createIndexes);
+            if (needsPriorities) {
+                backfillPriorities(conn);
+            }
+            if (hasColumn(conn, "IMAGES", "PAGE_ID")) {
+                migrateImagesTable(conn);
+            }
 
             System.out.println("Database schema initialized successfully (H2 Local DB)");
         } catch (SQLException e) {
@@ -93,13 +181,216 @@ public class DatabaseConfig {
         }
     }
 
+    /**
+     * Convert a database from the old schema, where pages were keyed by url TEXT UNIQUE
+     * and images referenced pages by URL. Every step checks whether it is still needed,
+     * so an interrupted migration simply resumes on the next start.
+     */
+    private void migrateUrlKeyedSchema(Connection conn) throws SQLException {
+        boolean needsHashes = !hasColumn(conn, "PAGES", "URL_HASH");
+        boolean needsImages = hasColumn(conn, "IMAGES", "PAGE_URL");
+        if (!needsHashes && !needsImages && uniqueConstraintsOn(conn, "PAGES", "URL").isEmpty()) {
+            return;
+        }
+        System.out.println("Migrating database to fingerprint-keyed pages...");
+
+        try (Statement stmt = conn.createStatement()) {
+            if (needsHashes) {
+                stmt.execute("ALTER TABLE pages ADD COLUMN url_hash BIGINT");
+                stmt.execute("ALTER TABLE pages ADD COLUMN host_id INT");
+            }
+
+            // Fingerprints and hosts are computed in Java, in batches
+            int backfilled = 0;
+            try (PreparedStatement select = conn.prepareStatement(
+                    "SELECT id, url FROM pages WHERE url_hash IS NULL");
+                    PreparedStatement update = conn.prepareStatement(
+                            "UPDATE pages SET url_hash = ?, host_id = ? WHERE id = ?");
+                    ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String url = rs.getString("url");
+                    update.setLong(1, UrlFingerprint.of(url));
+                    update.setInt(2, hostId(conn, UrlFingerprint.host(url)));
+                    update.setInt(3, rs.getInt("id"));
+                    update.addBatch();
+                    if (++backfilled % 1000 == 0) {
+                        update.executeBatch();
+                    }
+                }
+                update.executeBatch();
+            }
+            stmt.execute("ALTER TABLE pages ALTER COLUMN url_hash SET NOT NULL");
+
+            // Rebuild images against page ids; dropping the old table drops its URL foreign key
+            if (needsImages) {
+                stmt.execute("""
+                        CREATE TABLE images_by_id (
+                            id SERIAL PRIMARY KEY,
+                            src TEXT NOT NULL,
+                            alt TEXT,
+                            page_id INT NOT NULL,
+                            FOREIGN KEY (page_id) REFERENCES pages(id) ON DELETE CASCADE
+                        )
+                        """);
+                stmt.execute("""
+                        INSERT INTO images_by_id (src, alt, page_id)
+                        SELECT i.src, i.alt, p.id FROM images i JOIN pages p ON i.page_url = p.url
+                        ORDER BY i.id
+                        """);
+                stmt.execute("DROP TABLE images");
+                stmt.execute("ALTER TABLE images_by_id RENAME TO images");
+            }
+
+            stmt.execute("DROP INDEX IF EXISTS idx_pages_url");
+            for (String constraint : uniqueConstraintsOn(conn, "PAGES", "URL")) {
+                stmt.execute("ALTER TABLE pages DROP CONSTRAINT " + constraint);
+            }
+            System.out.println("Migrated " + backfilled + " pages");
+        }
+    }
+
+    /**
+     * Give pages stored before the crawl frontier existed their in-link counts
+     * and priorities. Their link depth is unknown and stays 0.
+     */
+    private void backfillPriorities(Connection conn) throws SQLException {
+        System.out.println("Computing crawl priorities for existing pages...");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(
+                    "UPDATE pages p SET inlinks = (SELECT COUNT(*) FROM links l WHERE l.dst_hash = p.url_hash)");
+            stmt.executeUpdate("UPDATE pages SET priority = LN(1 + inlinks)");
+        }
+    }
+
+    /**
+     * Move the old images table, which held a copy of an image for every page
+     * showing it, into image_sources and page_images. Both inserts skip rows
+     * that already exist, so an interrupted migration simply runs again.
+     */
+    private void migrateImagesTable(Connection conn) throws SQLException {
+        System.out.println("Deduplicating stored images...");
+        Map<Long, Integer> imageIds = new HashMap<>();
+        int rows = 0;
+        try (Statement stmt = conn.createStatement();
+                PreparedStatement source = conn.prepareStatement(
+                        "INSERT INTO image_sources (src_hash, src) VALUES (?, ?) ON CONFLICT DO NOTHING");
+                PreparedStatement sourceId = conn.prepareStatement("SELECT id FROM image_sources WHERE src_hash = ?");
+                PreparedStatement link = conn.prepareStatement(
+                        "INSERT INTO page_images (page_id, image_id, alt) VALUES (?, ?, ?) ON CONFLICT DO NOTHING")) {
+            try (ResultSet rs = stmt.executeQuery("SELECT page_id, src, alt FROM images ORDER BY id")) {
+                while (rs.next()) {
+                    String src = rs.getString("src");
+                    long srcHash = UrlFingerprint.of(src);
+                    Integer imageId = imageIds.get(srcHash);
+                    if (imageId == null) {
+                        source.setLong(1, srcHash);
+                        source.setString(2, src);
+                        source.executeUpdate();
+                        sourceId.setLong(1, srcHash);
+                        try (ResultSet id = sourceId.executeQuery()) {
+                            id.next();
+                            imageId = id.getInt(1);
+                        }
+                        imageIds.put(srcHash, imageId);
+                    }
+                    link.setInt(1, rs.getInt("page_id"));
+                    link.setInt(2, imageId);
+                    link.setString(3, rs.getString("alt"));
+                    link.addBatch();
+                    if (++rows % 1000 == 0) {
+                        link.executeBatch();
+                    }
+                }
+                link.executeBatch();
+            }
+            stmt.execute("DROP TABLE images");
+            // The images counter counted copies; from now on it counts distinct images
+            try (PreparedStatement recount = conn.prepareStatement(
+                    "UPDATE crawl_stats SET amount = (SELECT COUNT(*) FROM image_sources) WHERE name = ?")) {
+                recount.setString(1, CrawlStats.IMAGES);
+                recount.executeUpdate();
+            }
+        }
+        System.out.println("Moved " + rows + " images into " + imageIds.size() + " distinct images");
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        String sql = """
+                SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS
+                WHERE TABLE_SCHEMA = 'PUBLIC' AND UPPER(TABLE_NAME) = ? AND UPPER(COLUMN_NAME) = ?
+                """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            stmt.setString(2, column);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static List<String> uniqueConstraintsOn(Connection conn, String table, String column)
+            throws SQLException {
+        String sql = """
+                SELECT tc.CONSTRAINT_NAME
+                FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc
+                JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE k
+                  ON k.CONSTRAINT_SCHEMA = tc.CONSTRAINT_SCHEMA AND k.CONSTRAINT_NAME = tc.CONSTRAINT_NAME
+                WHERE tc.TABLE_SCHEMA = 'PUBLIC' AND tc.CONSTRAINT_TYPE = 'UNIQUE'
+                  AND UPPER(tc.TABLE_NAME) = ? AND UPPER(k.COLUMN_NAME) = ?
+                """;
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            stmt.setString(2, column);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * The id of a host in the hosts table, adding it on first sight.
+     * Ids never change, so they are cached for the life of the process.
+     */
+    public int hostId(Connection conn, String host) throws SQLException {
+        Integer cached = hostIds.get(host);
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement merge = conn.prepareStatement("MERGE INTO hosts (name) KEY (name) VALUES (?)");
+                PreparedStatement select = conn.prepareStatement("SELECT id FROM hosts WHERE name = ?")) {
+            merge.setString(1, host);
+            merge.executeUpdate();
+            select.setString(1, host);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                int id = rs.getInt(1);
+                hostIds.put(host, id);
+                return id;
+            }
+        }
+    }
+
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
 
+    /**
+     * A connection from the small pool reserved for health checks and statistics
+     */
+    public Connection getAdminConnection() throws SQLException {
+        return adminDataSource.getConnection();
+    }
+
     public void close() {
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
+        if (adminDataSource != null && !adminDataSource.isClosed()) {
+            adminDataSource.close();
+        }
     }
 }
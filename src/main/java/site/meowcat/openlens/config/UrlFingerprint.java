@@ -0,0 +1,52 @@
+package site.meowcat.openlens.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 64-bit URL fingerprints, the key pages are stored and looked up by.
+ * FNV-1a over the UTF-8 bytes, followed by the MurmurHash3 finalizer to
+ * spread FNV's weak high bits. Collisions are negligible until billions of
+ * pages.
+ */
+public final class UrlFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlFingerprint() {
+    }
+
+    public static long of(String url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Lowercased host of an absolute URL, without user info or port.
+     * Never fails, so it also works on URLs stored before canonicalization.
+     */
+    public static String host(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = url.substring(start, end);
+        authority = authority.substring(authority.lastIndexOf('@') + 1);
+        int colon = authority.lastIndexOf(':');
+        if (colon >= 0 && colon > authority.lastIndexOf(']')) {
+            authority = authority.substring(0, colon);
+        }
+        return authority.toLowerCase(Locale.ROOT);
+    }
+}
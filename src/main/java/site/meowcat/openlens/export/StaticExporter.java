@@ -58,12 +58,25 @@ public class StaticExporter {
         List<PageData> pages = new ArrayList<>();
         List<ImageData> images = new ArrayList<>();
 
-        String pageSql = "SELECT id, url, title, content, scraped_at FROM pages ORDER BY scraped_at DESC";
+        String pageSql = """
+                SELECT id, url, title, content, scraped_at FROM pages
+                WHERE content IS NOT NULL
+                ORDER BY scraped_at DESC
+                """;
+        // Each image once, credited to the most recently stored page that gives it alt text (or any page)
         String imageSql = """
-                SELECT i.src, i.alt, p.title, p.url
-                FROM images i
-                JOIN pages p ON i.page_url = p.url
-                ORDER BY p.scraped_at DESC
+                SELECT src, alt, title, url FROM (
+                    SELECT s.src, pi.alt, p.title, p.url, p.scraped_at,
+                           ROW_NUMBER() OVER (
+                               PARTITION BY s.id
+                               ORDER BY CASE WHEN pi.alt <> '' THEN 0 ELSE 1 END, p.scraped_at DESC, p.id
+                           ) AS choice
+                    FROM image_sources s
+                    JOIN page_images pi ON pi.image_id = s.id
+                    JOIN pages p ON p.id = pi.page_id
+                ) shown
+                WHERE choice = 1
+                ORDER BY scraped_at DESC
                 """;
 
         try (Connection conn = dbConfig.getConnection()) {
@@ -0,0 +1,228 @@
+package site.meowcat.openlens.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Block-Max WAND top-k evaluation of a disjunctive BM25 query over one segment.
+ *
+ * Cursors are kept sorted by current document. The pivot is the first document
+ * whose summed per-term score bounds could beat the current k-th best score;
+ * everything before it is skipped. At the pivot, the tighter per-block bounds
+ * are checked before any postings are decoded, so whole blocks of documents
+ * that cannot enter the top k are skipped as well.
+ *
+ * Every document also gets its static (PageRank) score, so bounds include the
+ * largest static score of any page.
+ *
+ * The query deadline is checked every few thousand steps; past it, evaluation
+ * stops and the documents collected so far are kept.
+ */
+class BlockMaxWand {
+    private static final int DEADLINE_CHECK_INTERVAL = 4096;
+
+    private final Segment segment;
+    private final int segmentIndex;
+    private final BitSet deleted;
+    private final QueryStats stats;
+    private final TopK top;
+
+    BlockMaxWand(Segment segment, int segmentIndex, BitSet deleted, QueryStats stats, TopK top) {
+        this.segment = segment;
+        this.segmentIndex = segmentIndex;
+        this.deleted = deleted;
+        this.stats = stats;
+        this.top = top;
+    }
+
+    void run() {
+        List<Term> terms = new ArrayList<>();
+        for (int t = 0; t < stats.terms.size(); t++) {
+            PostingsCursor cursor = segment.postings(stats.terms.get(t));
+            if (cursor != null) {
+                Term term = new Term(cursor, stats.idf[t], stats.avgDocLength);
+                cursor.nextDoc();
+                terms.add(term);
+            }
+        }
+        Term[] cursors = terms.toArray(new Term[0]);
+        float staticBound = stats.staticScores.max();
+
+        for (int steps = 1;; steps++) {
+            if (steps % DEADLINE_CHECK_INTERVAL == 0 && stats.expired()) {
+                return;
+            }
+            sortByDoc(cursors);
+            float threshold = top.threshold();
+
+            // Find the pivot: the first cursor at which the summed upper bounds exceed the threshold
+            float bound = staticBound;
+            int pivot = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i].cursor.doc() == PostingsCursor.NO_MORE_DOCS) {
+                    break;
+                }
+                bound += cursors[i].upperBound;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return;
+            }
+            int pivotDoc = cursors[pivot].cursor.doc();
+
+            // Cursors sharing the pivot document also contribute to it
+            while (pivot + 1 < cursors.length && cursors[pivot + 1].cursor.doc() == pivotDoc) {
+                pivot++;
+            }
+
+            float blockBound = staticBound;
+            for (int i = 0; i <= pivot; i++) {
+                blockBound += cursors[i].blockUpperBound(pivotDoc);
+            }
+            if (blockBound <= threshold) {
+                // No document before the end of the shortest current block can make it
+                int next = pivot + 1 < cursors.length ? cursors[pivot + 1].cursor.doc() : PostingsCursor.NO_MORE_DOCS;
+                for (int i = 0; i <= pivot; i++) {
+                    if (cursors[i].shallowLastDoc != PostingsCursor.NO_MORE_DOCS) {
+                        next = Math.min(next, cursors[i].shallowLastDoc + 1);
+                    }
+                }
+                next = Math.max(next, pivotDoc + 1);
+                for (int i = 0; i <= pivot; i++) {
+                    cursors[i].cursor.advance(next);
+                }
+                continue;
+            }
+
+            if (cursors[0].cursor.doc() == pivotDoc) {
+                // Every cursor up to the pivot is on the pivot document: score it
+                if (!deleted.get(pivotDoc)) {
+                    int pageId = segment.pageId(pivotDoc);
+                    float score = stats.staticScores.score(pageId);
+                    int length = segment.docLength(pivotDoc);
+                    for (int i = 0; i <= pivot; i++) {
+                        score += Bm25.score(cursors[i].idf, cursors[i].cursor.freq(), length, stats.avgDocLength);
+                    }
+                    top.offer(score, segmentIndex, pivotDoc, pageId);
+                }
+                for (int i = 0; i <= pivot; i++) {
+                    cursors[i].cursor.nextDoc();
+                }
+            } else {
+                // Documents before the pivot cannot make the top k
+                for (int i = 0; i <= pivot && cursors[i].cursor.doc() < pivotDoc; i++) {
+                    cursors[i].cursor.advance(pivotDoc);
+                }
+            }
+        }
+    }
+
+    // Insertion sort: queries have few terms and the order barely changes between steps
+    private static void sortByDoc(Term[] cursors) {
+        for (int i = 1; i < cursors.length; i++) {
+            Term term = cursors[i];
+            int doc = term.cursor.doc();
+            int j = i - 1;
+            while (j >= 0 && cursors[j].cursor.doc() > doc) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = term;
+        }
+    }
+
+    private static class Term {
+        final PostingsCursor cursor;
+        final float idf;
+        final float avgDocLength;
+        final float upperBound;
+
+        // Block holding the last target passed to blockUpperBound, and its bound
+        int shallowLastDoc = -1;
+        float shallowBound;
+
+        Term(PostingsCursor cursor, float idf, float avgDocLength) {
+            this.cursor = cursor;
+            this.idf = idf;
+            this.avgDocLength = avgDocLength;
+            this.upperBound = Bm25.score(idf, cursor.maxTf(), cursor.minLength(), avgDocLength);
+        }
+
+        /**
+         * Score bound of the block that would hold target. Targets only move
+         * forward, so the bound is recomputed only when target leaves the block.
+         */
+        float blockUpperBound(int target) {
+            if (target > shallowLastDoc) {
+                int block = cursor.findBlock(target);
+                if (block >= cursor.blockCount()) {
+                    shallowLastDoc = PostingsCursor.NO_MORE_DOCS;
+                    shallowBound = 0;
+                } else {
+                    shallowLastDoc = cursor.lastDoc(block);
+                    shallowBound = Bm25.score(idf, cursor.blockMaxTf(block), cursor.blockMinLength(block),
+                            avgDocLength);
+                }
+            }
+            return shallowBound;
+        }
+    }
+
+    /**
+     * Bounded min-heap of the best documents seen so far across a shard's segments
+     */
+    static class TopK {
+        private final int k;
+        private final PriorityQueue<Candidate> heap;
+
+        TopK(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(TopK::compare);
+        }
+
+        /**
+         * Score a new document must beat to enter the top k
+         */
+        float threshold() {
+            return heap.size() < k ? 0 : heap.peek().score;
+        }
+
+        void offer(float score, int segment, int ord, int pageId) {
+            Candidate candidate = new Candidate(score, segment, ord, pageId);
+            if (heap.size() < k) {
+                heap.add(candidate);
+            } else if (compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        List<Candidate> candidates() {
+            return new ArrayList<>(heap);
+        }
+
+        private static int compare(Candidate a, Candidate b) {
+            int byScore = Float.compare(a.score, b.score);
+            return byScore != 0 ? byScore : Integer.compare(b.pageId, a.pageId);
+        }
+    }
+
+    static class Candidate {
+        final float score;
+        final int segment;
+        final int ord;
+        final int pageId;
+
+        Candidate(float score, int segment, int ord, int pageId) {
+            this.score = score;
+            this.segment = segment;
+            this.ord = ord;
+            this.pageId = pageId;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package site.meowcat.openlens.index;
+
+/**
+ * Okapi BM25 scoring shared by every shard so scores can be merged directly
+ */
+public final class Bm25 {
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+
+    // Title terms count this many times towards term frequency
+    static final int TITLE_BOOST = 3;
+
+    private Bm25() {
+    }
+
+    public static float idf(long docCount, long docFreq) {
+        return (float) Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    public static float score(float idf, int tf, int docLength, float avgDocLength) {
+        float norm = K1 * (1 - B + B * docLength / avgDocLength);
+        return idf * (tf * (K1 + 1)) / (tf + norm);
+    }
+}
@@ -0,0 +1,28 @@
+package site.meowcat.openlens.index;
+
+/**
+ * A single scored document returned by an index shard
+ */
+public class Hit {
+    public final int id;
+    public final float score;
+    public final String url;
+    public final String title;
+    public final String snippet;
+
+    public Hit(int id, float score, String url, String title, String snippet) {
+        this.id = id;
+        this.score = score;
+        this.url = url;
+        this.title = title;
+        this.snippet = snippet;
+    }
+
+    /**
+     * Orders by score, breaking ties by page id so merged results are stable
+     */
+    static int compare(Hit a, Hit b) {
+        int byScore = Float.compare(a.score, b.score);
+        return byScore != 0 ? byScore : Integer.compare(b.id, a.id);
+    }
+}
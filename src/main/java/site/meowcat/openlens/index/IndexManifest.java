@@ -0,0 +1,110 @@
+package site.meowcat.openlens.index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Lists the live segment files of every shard for one index generation.
+ * The manifest is the single commit point between the crawler and the API:
+ * it is replaced atomically, so a reader always sees a complete generation.
+ */
+class IndexManifest {
+    static final String FILE_NAME = "manifest";
+
+    final long generation;
+    final long nextSegment;
+    final List<List<String>> shards;
+
+    IndexManifest(long generation, long nextSegment, List<List<String>> shards) {
+        this.generation = generation;
+        this.nextSegment = nextSegment;
+        List<List<String>> copy = new ArrayList<>(shards.size());
+        for (List<String> segments : shards) {
+            copy.add(Collections.unmodifiableList(new ArrayList<>(segments)));
+        }
+        this.shards = Collections.unmodifiableList(copy);
+    }
+
+    static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(FILE_NAME));
+    }
+
+    static IndexManifest read(Path dir) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(dir.resolve(FILE_NAME))) {
+            props.load(reader);
+        }
+        try {
+            int shardCount = Integer.parseInt(props.getProperty("shards"));
+            List<List<String>> shards = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                String value = props.getProperty("shard." + i, "");
+                shards.add(value.isEmpty() ? new ArrayList<>() : Arrays.asList(value.split(",")));
+            }
+            return new IndexManifest(
+                    Long.parseLong(props.getProperty("generation")),
+                    Long.parseLong(props.getProperty("nextSegment")),
+                    shards);
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Corrupt index manifest in " + dir, e);
+        }
+    }
+
+    void write(Path dir) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("generation", Long.toString(generation));
+        props.setProperty("nextSegment", Long.toString(nextSegment));
+        props.setProperty("shards", Integer.toString(shards.size()));
+        for (int i = 0; i < shards.size(); i++) {
+            props.setProperty("shard." + i, String.join(",", shards.get(i)));
+        }
+
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            props.store(writer, "OpenLens index manifest");
+        }
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * A new generation with one freshly flushed segment appended to each given shard
+     */
+    IndexManifest withAppended(String[] newSegments, long nextSegment) {
+        List<List<String>> next = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            List<String> segments = new ArrayList<>(shards.get(i));
+            if (newSegments[i] != null) {
+                segments.add(newSegments[i]);
+            }
+            next.add(segments);
+        }
+        return new IndexManifest(generation + 1, nextSegment, next);
+    }
+
+    /**
+     * A new generation where a contiguous run of a shard's segments is replaced by their merge
+     */
+    IndexManifest withMerged(int shard, List<String> run, String merged, long nextSegment) {
+        List<String> segments = new ArrayList<>(shards.get(shard));
+        int start = Collections.indexOfSubList(segments, run);
+        if (start < 0) {
+            throw new IllegalStateException("Merged segments are no longer in shard " + shard);
+        }
+        segments.subList(start, start + run.size()).clear();
+        segments.add(start, merged);
+
+        List<List<String>> next = new ArrayList<>(shards);
+        next.set(shard, segments);
+        return new IndexManifest(generation + 1, nextSegment, next);
+    }
+}
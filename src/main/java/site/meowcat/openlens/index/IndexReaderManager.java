@@ -0,0 +1,87 @@
+package site.meowcat.openlens.index;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the API's view of the index current while the crawler keeps writing to it.
+ * A background task polls the manifest and, when the crawler has committed a new
+ * generation, opens it and atomically swaps it in.
+ *
+ * Queries grab the current generation once and run entirely against it, so
+ * in-flight queries finish on the snapshot they started with. Segment files are
+ * memory-mapped and the mappings are only released once no generation references
+ * them, so a merged-away segment stays readable for as long as a query needs it.
+ */
+public class IndexReaderManager {
+    public static final long DEFAULT_REFRESH_MS = Long.getLong("openlens.index.refreshMs", 2000);
+
+    private final Path dir;
+    private final long shardTimeoutMs;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService refresher;
+    private volatile ShardedIndex current;
+
+    public IndexReaderManager(Path dir, long shardTimeoutMs) throws IOException {
+        this.dir = dir;
+        this.shardTimeoutMs = shardTimeoutMs;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.current = ShardedIndex.open(dir, pool, shardTimeoutMs, Map.of());
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "index-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ShardedIndex acquire() {
+        return current;
+    }
+
+    public void startRefreshing(long intervalMs) {
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                maybeRefresh();
+            } catch (IOException e) {
+                // Usually a segment that was merged away between reading the manifest
+                // and opening it; the next poll will see the newer manifest
+                System.err.println("Index refresh failed, retrying: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Swap in the latest committed generation if it is newer than the current one,
+     * or if PageRank has written new page scores
+     */
+    public synchronized boolean maybeRefresh() throws IOException {
+        ShardedIndex previous = current;
+        if (IndexManifest.read(dir).generation <= previous.generation()
+                && StaticScores.lastModified(dir) == previous.staticScores().modified()) {
+            return false;
+        }
+
+        Map<Path, Segment> reuse = new HashMap<>();
+        for (int i = 0; i < previous.shardCount(); i++) {
+            for (Segment segment : previous.shard(i).segments()) {
+                reuse.put(segment.file(), segment);
+            }
+        }
+        ShardedIndex next = ShardedIndex.open(dir, pool, shardTimeoutMs, reuse);
+        current = next;
+        System.out.println("Search index refreshed to generation " + next.generation()
+                + " (" + next.docCount() + " pages)");
+        return true;
+    }
+
+    public void close() {
+        refresher.shutdownNow();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package site.meowcat.openlens.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable segments holding the pages that hash to one shard.
+ * Segments are ordered oldest first; when a page has been re-indexed, only
+ * its copy in the newest segment is live and older copies are masked out.
+ */
+public class IndexShard {
+    private final List<Segment> segments;
+    private final BitSet[] deleted;
+    private final int liveDocs;
+    private final long liveLength;
+
+    IndexShard(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.deleted = new BitSet[segments.size()];
+
+        BitSet seenIds = new BitSet();
+        int live = 0;
+        long length = 0;
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            deleted[s] = new BitSet(segment.docCount());
+            for (int ord = segment.docCount() - 1; ord >= 0; ord--) {
+                int id = segment.pageId(ord);
+                if (seenIds.get(id)) {
+                    deleted[s].set(ord);
+                } else {
+                    seenIds.set(id);
+                    live++;
+                    length += segment.docLength(ord);
+                }
+            }
+        }
+        this.liveDocs = live;
+        this.liveLength = length;
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    boolean isDeleted(int segment, int ord) {
+        return deleted[segment].get(ord);
+    }
+
+    public int docCount() {
+        return liveDocs;
+    }
+
+    public long totalLength() {
+        return liveLength;
+    }
+
+    public int docFreq(String term) {
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.docFreq(term);
+        }
+        return total;
+    }
+
+    /**
+     * Find the best k documents for the query using Block-Max WAND
+     */
+    List<Hit> search(QueryStats stats, int k) {
+        BlockMaxWand.TopK top = new BlockMaxWand.TopK(k);
+        for (int s = 0; s < segments.size() && !stats.expired(); s++) {
+            new BlockMaxWand(segments.get(s), s, deleted[s], stats, top).run();
+        }
+
+        // Stored fields are only read for the documents that made the cut
+        List<Hit> hits = new ArrayList<>();
+        for (BlockMaxWand.Candidate candidate : top.candidates()) {
+            hits.add(segments.get(candidate.segment).hit(candidate.ord, candidate.score));
+        }
+        return hits;
+    }
+}
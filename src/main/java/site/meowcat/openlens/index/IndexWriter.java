@@ -0,0 +1,310 @@
+package site.meowcat.openlens.index;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Publishes freshly crawled pages to the on-disk index without a full rebuild.
+ * Pages are buffered per shard and flushed as small segments on commit; each
+ * commit writes a new manifest generation that a running API picks up.
+ * A background merge keeps the number of small segments per shard bounded.
+ *
+ * Only one writer may own an index directory at a time.
+ */
+public class IndexWriter implements AutoCloseable {
+    public static final int COMMIT_EVERY_DOCS = Integer.getInteger("openlens.index.commitDocs", 10);
+    public static final long COMMIT_EVERY_MS = Long.getLong("openlens.index.commitMs", 30000);
+
+    // Merge a run of this many adjacent segments once a shard has more than MAX_SEGMENTS_PER_SHARD
+    static final int MERGE_FACTOR = 4;
+    static final int MAX_SEGMENTS_PER_SHARD = 8;
+
+    // How long a merged-away segment file is kept for readers that have not refreshed yet
+    static final long DELETE_GRACE_MS = 60000;
+
+    private final Path dir;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final SegmentWriter[] buffers;
+    private final Map<Path, Segment> openSegments = new HashMap<>();
+    private final Map<Path, Long> pendingDeletes = new HashMap<>();
+    private final ExecutorService merger;
+    private IndexManifest manifest;
+    private int bufferedDocs;
+    private long firstBufferedAt;
+
+    private IndexWriter(Path dir) throws IOException {
+        this.dir = dir;
+        this.lockChannel = FileChannel.open(dir.resolve("write.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Index " + dir + " is locked by another writer");
+        }
+        this.manifest = IndexManifest.read(dir);
+        this.buffers = new SegmentWriter[manifest.shards.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new SegmentWriter();
+        }
+        this.merger = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "index-merger");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleOrphanDeletes();
+    }
+
+    // Segments left behind by a crash before their manifest was written, or by an
+    // earlier writer that exited before its grace period ran out. New segment
+    // names start past every file on disk, so none of them is ever reused while
+    // its delete is pending.
+    private void scheduleOrphanDeletes() throws IOException {
+        long now = System.currentTimeMillis();
+        long highest = 0;
+        for (int i = 0; i < manifest.shards.size(); i++) {
+            List<String> live = manifest.shards.get(i);
+            try (Stream<Path> files = Files.list(ShardedIndex.shardDir(dir, i))) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    String name = file.getFileName().toString();
+                    highest = Math.max(highest, ShardedIndex.segmentNumber(name));
+                    if (!live.contains(name)) {
+                        pendingDeletes.put(file, now);
+                    }
+                }
+            }
+        }
+        if (highest >= manifest.nextSegment) {
+            manifest = new IndexManifest(manifest.generation, highest + 1, manifest.shards);
+        }
+    }
+
+    /**
+     * Open the index for writing, building it from the database first if it does not exist yet
+     */
+    public static IndexWriter open(DatabaseConfig dbConfig, Path dir) throws IOException, SQLException {
+        if (!ShardedIndex.exists(dir)) {
+            System.out.println("No search index found in " + dir + ", building from database...");
+            ShardedIndex.build(dbConfig, dir, ShardedIndex.DEFAULT_SHARDS);
+        }
+        return new IndexWriter(dir);
+    }
+
+    /**
+     * Buffer a page for the next commit. A page that is already indexed is
+     * replaced: readers only see the copy in the newest segment. Commits early
+     * if a shard's buffer reaches the segment size limit.
+     */
+    public synchronized void addPage(int id, String url, String title, String content) throws IOException {
+        if (bufferedDocs == 0) {
+            firstBufferedAt = System.currentTimeMillis();
+        }
+        SegmentWriter buffer = buffers[ShardedIndex.shardFor(id, buffers.length)];
+        buffer.add(id, url, title, content);
+        bufferedDocs++;
+        if (buffer.docCount() >= ShardedIndex.MAX_DOCS_PER_SEGMENT) {
+            commit();
+        }
+    }
+
+    /**
+     * Remove a page from search results. The page is indexed as an empty
+     * document, which masks every older copy and matches no query.
+     */
+    public void deletePage(int id) throws IOException {
+        addPage(id, "", "", "");
+    }
+
+    /**
+     * Commit if enough pages are buffered or the oldest buffered page has waited long enough
+     */
+    public synchronized void maybeCommit() throws IOException {
+        if (bufferedDocs >= COMMIT_EVERY_DOCS
+                || (bufferedDocs > 0 && System.currentTimeMillis() - firstBufferedAt >= COMMIT_EVERY_MS)) {
+            commit();
+        }
+    }
+
+    /**
+     * Flush every buffered page into new segments and publish a new generation
+     */
+    public synchronized void commit() throws IOException {
+        if (bufferedDocs == 0) {
+            return;
+        }
+        long nextSegment = manifest.nextSegment;
+        String[] flushed = new String[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i].docCount() > 0) {
+                flushed[i] = ShardedIndex.segmentName(nextSegment++);
+                Path file = ShardedIndex.shardDir(dir, i).resolve(flushed[i]);
+                pendingDeletes.remove(file);
+                buffers[i].write(file);
+                buffers[i] = new SegmentWriter();
+            }
+        }
+        manifest = manifest.withAppended(flushed, nextSegment);
+        manifest.write(dir);
+        bufferedDocs = 0;
+
+        deleteExpiredFiles(System.currentTimeMillis());
+        merger.execute(this::maybeMerge);
+    }
+
+    private void maybeMerge() {
+        try {
+            for (int shard = 0; shard < buffers.length; shard++) {
+                while (mergeOnce(shard)) {
+                    // Keep merging until the shard is within budget
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Index merge failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merge the adjacent run of segments with the fewest documents, if the shard has too many.
+     * Only contiguous runs are merged so that "newest copy wins" still holds afterwards.
+     */
+    private boolean mergeOnce(int shard) throws IOException {
+        List<String> names;
+        synchronized (this) {
+            names = manifest.shards.get(shard);
+        }
+        if (names.size() <= MAX_SEGMENTS_PER_SHARD) {
+            return false;
+        }
+
+        List<Segment> segments = new ArrayList<>(names.size());
+        for (String name : names) {
+            segments.add(segment(ShardedIndex.shardDir(dir, shard).resolve(name)));
+        }
+
+        int bestStart = -1;
+        long bestDocs = Long.MAX_VALUE;
+        for (int start = 0; start + MERGE_FACTOR <= segments.size(); start++) {
+            long docs = 0;
+            for (int i = start; i < start + MERGE_FACTOR; i++) {
+                docs += segments.get(i).docCount();
+            }
+            if (docs < bestDocs && docs <= ShardedIndex.MAX_DOCS_PER_SEGMENT) {
+                bestDocs = docs;
+                bestStart = start;
+            }
+        }
+        if (bestStart < 0) {
+            return false;
+        }
+
+        // Live docs are judged against the whole shard, so copies superseded by
+        // newer segments outside the run are dropped by the merge as well
+        IndexShard view = new IndexShard(segments);
+        SegmentWriter merged = new SegmentWriter();
+        for (int s = bestStart; s < bestStart + MERGE_FACTOR; s++) {
+            Segment segment = segments.get(s);
+            int[] newOrds = new int[segment.docCount()];
+            for (int ord = 0; ord < segment.docCount(); ord++) {
+                if (view.isDeleted(s, ord)) {
+                    newOrds[ord] = -1;
+                } else {
+                    Hit stored = segment.hit(ord, 0);
+                    newOrds[ord] = merged.addDocument(segment.pageId(ord), segment.docLength(ord),
+                            stored.url, stored.title, stored.snippet);
+                }
+            }
+            for (int t = 0; t < segment.termCount(); t++) {
+                String term = segment.term(t);
+                PostingsCursor cursor = segment.postings(t);
+                for (int ord = cursor.nextDoc(); ord != PostingsCursor.NO_MORE_DOCS; ord = cursor.nextDoc()) {
+                    if (newOrds[ord] >= 0) {
+                        merged.addPosting(term, newOrds[ord], cursor.freq());
+                    }
+                }
+            }
+        }
+
+        String mergedName;
+        synchronized (this) {
+            mergedName = ShardedIndex.segmentName(manifest.nextSegment);
+            manifest = new IndexManifest(manifest.generation, manifest.nextSegment + 1, manifest.shards);
+            pendingDeletes.remove(ShardedIndex.shardDir(dir, shard).resolve(mergedName));
+        }
+        merged.write(ShardedIndex.shardDir(dir, shard).resolve(mergedName));
+
+        List<String> run = names.subList(bestStart, bestStart + MERGE_FACTOR);
+        synchronized (this) {
+            manifest = manifest.withMerged(shard, run, mergedName, manifest.nextSegment);
+            manifest.write(dir);
+            long now = System.currentTimeMillis();
+            for (String name : run) {
+                Path file = ShardedIndex.shardDir(dir, shard).resolve(name);
+                openSegments.remove(file);
+                pendingDeletes.put(file, now);
+            }
+        }
+        System.out.println("Merged " + MERGE_FACTOR + " segments of shard " + shard + " into " + mergedName
+                + " (" + bestDocs + " pages)");
+        return true;
+    }
+
+    private synchronized Segment segment(Path file) throws IOException {
+        Segment segment = openSegments.get(file);
+        if (segment == null) {
+            segment = Segment.open(file);
+            openSegments.put(file, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Delete the old segment files whose grace period has run out by now
+     */
+    synchronized void deleteExpiredFiles(long now) {
+        Iterator<Map.Entry<Path, Long>> it = pendingDeletes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (now - entry.getValue() >= DELETE_GRACE_MS) {
+                try {
+                    Files.deleteIfExists(entry.getKey());
+                    it.remove();
+                } catch (IOException e) {
+                    System.err.println("Could not delete old segment " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Commit anything still buffered, wait for running merges and release the write lock
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+        merger.shutdown();
+        try {
+            merger.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+}
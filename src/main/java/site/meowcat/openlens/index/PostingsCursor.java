@@ -0,0 +1,169 @@
+package site.meowcat.openlens.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only iterator over the block-encoded postings of one term.
+ * Blocks are decoded lazily, and {@link #advance(int)} uses the skip table
+ * to jump over whole blocks without decoding them. The skip table also
+ * carries per-block score bounds for Block-Max WAND.
+ */
+class PostingsCursor {
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final ByteBuffer buf;
+    private final int skipStart;
+    private final int skipEntrySize;
+    private final int dataStart;
+    private final int blockCount;
+    private final int docFreq;
+    private final int maxTf;
+    private final int minLength;
+
+    private final int[] docs = new int[SegmentWriter.BLOCK_SIZE];
+    private final int[] freqs = new int[SegmentWriter.BLOCK_SIZE];
+    private int block = -1;
+    private int blockLength;
+    private int index;
+    private int doc = -1;
+
+    PostingsCursor(ByteBuffer buf, int start, int docFreq, int skipEntrySize, int maxTf, int minLength) {
+        this.buf = buf;
+        this.docFreq = docFreq;
+        this.skipEntrySize = skipEntrySize;
+        this.maxTf = maxTf;
+        this.minLength = minLength;
+        this.blockCount = (docFreq + SegmentWriter.BLOCK_SIZE - 1) / SegmentWriter.BLOCK_SIZE;
+        this.skipStart = start;
+        this.dataStart = start + blockCount * skipEntrySize;
+    }
+
+    int docFreq() {
+        return docFreq;
+    }
+
+    int doc() {
+        return doc;
+    }
+
+    int freq() {
+        return freqs[index];
+    }
+
+    /**
+     * Highest term frequency of this term in any document
+     */
+    int maxTf() {
+        return maxTf;
+    }
+
+    /**
+     * Shortest document containing this term
+     */
+    int minLength() {
+        return minLength;
+    }
+
+    int nextDoc() {
+        if (doc == NO_MORE_DOCS) {
+            return doc;
+        }
+        if (++index >= blockLength) {
+            if (block + 1 >= blockCount) {
+                return doc = NO_MORE_DOCS;
+            }
+            loadBlock(block + 1);
+        }
+        return doc = docs[index];
+    }
+
+    /**
+     * Move to the first document at or after target
+     */
+    int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        int next = findBlock(target);
+        if (next >= blockCount) {
+            return doc = NO_MORE_DOCS;
+        }
+        if (next != block) {
+            loadBlock(next);
+        }
+        while (docs[index] < target) {
+            index++;
+        }
+        return doc = docs[index];
+    }
+
+    /**
+     * Index of the block that would hold target, without decoding anything.
+     * Returns blockCount if target is past the last posting.
+     */
+    int findBlock(int target) {
+        int lo = Math.max(block, 0);
+        int hi = blockCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lastDoc(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    int blockCount() {
+        return blockCount;
+    }
+
+    int lastDoc(int blockIndex) {
+        return buf.getInt(skipStart + blockIndex * skipEntrySize);
+    }
+
+    int blockMaxTf(int blockIndex) {
+        return skipEntrySize > 8 ? buf.getInt(skipStart + blockIndex * skipEntrySize + 8) : maxTf;
+    }
+
+    int blockMinLength(int blockIndex) {
+        return skipEntrySize > 8 ? buf.getInt(skipStart + blockIndex * skipEntrySize + 12) : minLength;
+    }
+
+    private void loadBlock(int blockIndex) {
+        int pos = dataStart + buf.getInt(skipStart + blockIndex * skipEntrySize + 4);
+        int length = blockIndex == blockCount - 1
+                ? docFreq - blockIndex * SegmentWriter.BLOCK_SIZE
+                : SegmentWriter.BLOCK_SIZE;
+
+        int prev = blockIndex == 0 ? -1 : lastDoc(blockIndex - 1);
+        for (int i = 0; i < length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            prev += value;
+            docs[i] = prev;
+        }
+        for (int i = 0; i < length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            freqs[i] = value;
+        }
+
+        block = blockIndex;
+        blockLength = length;
+        index = 0;
+    }
+}
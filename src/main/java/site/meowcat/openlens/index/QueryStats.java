@@ -0,0 +1,30 @@
+package site.meowcat.openlens.index;
+
+import java.util.List;
+
+/**
+ * Collection-wide statistics for one query, gathered across all shards
+ * before scoring so every shard ranks with the same idf values
+ */
+class QueryStats {
+    final List<String> terms;
+    final float[] idf;
+    final float avgDocLength;
+    final StaticScores staticScores;
+    final long deadlineNanos;
+
+    QueryStats(List<String> terms, float[] idf, float avgDocLength, StaticScores staticScores, long deadlineNanos) {
+        this.terms = terms;
+        this.idf = idf;
+        this.avgDocLength = avgDocLength;
+        this.staticScores = staticScores;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Whether the query has run out of time and scoring should stop with what it has
+     */
+    boolean expired() {
+        return System.nanoTime() - deadlineNanos > 0;
+    }
+}
@@ -0,0 +1,189 @@
+package site.meowcat.openlens.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a segment file written by {@link SegmentWriter}.
+ * The file is memory-mapped, so postings and stored fields live in the OS
+ * page cache rather than on the Java heap and opening is near instant.
+ */
+public class Segment {
+    static final int VERSION_1 = 1;
+    private static final int V1_TERM_ENTRY_SIZE = 20;
+    private static final int V1_SKIP_ENTRY_SIZE = 8;
+
+    private final Path file;
+    private final ByteBuffer buf;
+    private final int version;
+    private final int termEntrySize;
+    private final int skipEntrySize;
+    private final int docCount;
+    private final int termCount;
+    private final long totalLength;
+    private final int docsOffset;
+    private final int termsOffset;
+    private final int termBytesOffset;
+    private final int postingsOffset;
+    private final int storedOffset;
+
+    private Segment(Path file, ByteBuffer buf) throws IOException {
+        this.file = file;
+        this.buf = buf;
+        if (buf.getInt(0) != SegmentWriter.MAGIC) {
+            throw new IOException("Not a segment file: " + file);
+        }
+        this.version = buf.getInt(4);
+        if (version == SegmentWriter.VERSION) {
+            this.termEntrySize = SegmentWriter.TERM_ENTRY_SIZE;
+            this.skipEntrySize = SegmentWriter.SKIP_ENTRY_SIZE;
+        } else if (version == VERSION_1) {
+            this.termEntrySize = V1_TERM_ENTRY_SIZE;
+            this.skipEntrySize = V1_SKIP_ENTRY_SIZE;
+        } else {
+            throw new IOException("Unsupported segment version " + version + ": " + file);
+        }
+        this.docCount = buf.getInt(8);
+        this.termCount = buf.getInt(12);
+        this.totalLength = buf.getLong(16);
+        this.docsOffset = (int) buf.getLong(24);
+        this.termsOffset = (int) buf.getLong(32);
+        this.termBytesOffset = (int) buf.getLong(40);
+        this.postingsOffset = (int) buf.getLong(48);
+        this.storedOffset = (int) buf.getLong(56);
+    }
+
+    public static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Segment(file, mapped);
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    public int pageId(int ord) {
+        return buf.getInt(docsOffset + ord * SegmentWriter.DOC_ENTRY_SIZE);
+    }
+
+    public int docLength(int ord) {
+        return buf.getInt(docsOffset + ord * SegmentWriter.DOC_ENTRY_SIZE + 4);
+    }
+
+    public int docFreq(String term) {
+        int entry = findTerm(term);
+        return entry >= 0 ? buf.getInt(entry + 8) : 0;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * The i-th term in sorted order
+     */
+    String term(int i) {
+        int entry = termsOffset + i * termEntrySize;
+        byte[] bytes = new byte[buf.getInt(entry + 4)];
+        buf.get(termBytesOffset + buf.getInt(entry), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open a cursor over the postings of a term, or null if the term is absent
+     */
+    PostingsCursor postings(String term) {
+        int entry = findTerm(term);
+        return entry >= 0 ? cursorAt(entry) : null;
+    }
+
+    /**
+     * Open a cursor over the postings of the i-th term
+     */
+    PostingsCursor postings(int i) {
+        return cursorAt(termsOffset + i * termEntrySize);
+    }
+
+    private PostingsCursor cursorAt(int entry) {
+        int docFreq = buf.getInt(entry + 8);
+        int start = postingsOffset + (int) buf.getLong(entry + 12);
+        if (version == VERSION_1) {
+            // No stored bounds: assume the loosest possible ones
+            return new PostingsCursor(buf, start, docFreq, skipEntrySize, Integer.MAX_VALUE, 0);
+        }
+        return new PostingsCursor(buf, start, docFreq, skipEntrySize, buf.getInt(entry + 20), buf.getInt(entry + 24));
+    }
+
+    /**
+     * Load the stored fields for a document
+     */
+    Hit hit(int ord, float score) {
+        int pos = storedOffset + buf.getInt(docsOffset + ord * SegmentWriter.DOC_ENTRY_SIZE + 8);
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; i++) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            byte[] bytes = new byte[length];
+            buf.get(pos, bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            pos += length;
+        }
+        return new Hit(pageId(ord), score, fields[0], fields[1], fields[2]);
+    }
+
+    // Binary search of the sorted term table; returns the entry position or -1
+    private int findTerm(String term) {
+        byte[] target = term.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = termsOffset + mid * termEntrySize;
+            int cmp = compareTerm(entry, target);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTerm(int entry, byte[] target) {
+        int start = termBytesOffset + buf.getInt(entry);
+        int length = buf.getInt(entry + 4);
+        int n = Math.min(length, target.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buf.get(start + i) & 0xFF, target[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, target.length);
+    }
+}
@@ -0,0 +1,232 @@
+package site.meowcat.openlens.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers pages in memory and writes them out as one immutable segment file.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * header    magic, version, docCount, termCount, totalLength, section offsets
+ * docs      docCount x (int pageId, int length, int storedOffset)
+ * terms     termCount x (int bytesOffset, int bytesLength, int docFreq, long postingsOffset,
+ *           int maxTf, int minLength), sorted by term bytes
+ * termBytes UTF-8 term text
+ * postings  per term: skip table of (int lastDoc, int dataOffset, int maxTf, int minLength) per block,
+ *           then per block the vbyte doc deltas followed by the vbyte term frequencies
+ * stored    per doc: vbyte-length-prefixed UTF-8 url, title and snippet
+ * </pre>
+ * Postings refer to documents by their ordinal in the docs section. The maxTf and
+ * minLength pairs bound the BM25 score any document can reach for a term or within
+ * a block, which lets the query evaluator skip documents that cannot make the top k.
+ * Version 1 segments lack those bounds.
+ */
+public class SegmentWriter {
+    static final int MAGIC = 0x4F4C5347; // "OLSG"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int DOC_ENTRY_SIZE = 12;
+    static final int TERM_ENTRY_SIZE = 28;
+    static final int SKIP_ENTRY_SIZE = 16;
+    static final int BLOCK_SIZE = 128;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final List<int[]> docs = new ArrayList<>();
+    private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    private long totalLength;
+
+    public void add(int id, String url, String title, String content) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String term : Tokenizer.tokenize(title)) {
+            termFreqs.merge(term, Bm25.TITLE_BOOST, Integer::sum);
+            length++;
+        }
+        for (String term : Tokenizer.tokenize(content)) {
+            termFreqs.merge(term, 1, Integer::sum);
+            length++;
+        }
+
+        int ord = addDocument(id, length, url, title, snippet(content));
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+            addPosting(entry.getKey(), ord, entry.getValue());
+        }
+    }
+
+    /**
+     * Append an already-inverted document's stored fields and return its ordinal.
+     * Used when merging segments, where the original content is no longer available.
+     */
+    int addDocument(int id, int length, String url, String title, String snippet) {
+        int ord = docs.size();
+        docs.add(new int[] { id, length, stored.size() });
+        writeString(stored, url);
+        writeString(stored, title);
+        writeString(stored, snippet);
+        totalLength += length;
+        return ord;
+    }
+
+    /**
+     * Postings for a term must be added in increasing ordinal order
+     */
+    void addPosting(String term, int ord, int tf) {
+        postings.computeIfAbsent(term, t -> new Postings()).add(ord, tf);
+    }
+
+    public int docCount() {
+        return docs.size();
+    }
+
+    /**
+     * Write the segment to a temporary file and atomically move it into place,
+     * so readers never observe a partially written segment
+     */
+    public void write(Path file) throws IOException {
+        List<byte[]> terms = new ArrayList<>(postings.size());
+        for (String term : postings.keySet()) {
+            terms.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        terms.sort(Arrays::compareUnsigned);
+
+        int[] docLengths = new int[docs.size()];
+        for (int i = 0; i < docLengths.length; i++) {
+            docLengths[i] = docs.get(i)[1];
+        }
+
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream postingsOut = new ByteArrayOutputStream();
+        ByteBuffer termTable = ByteBuffer.allocate(terms.size() * TERM_ENTRY_SIZE);
+        for (byte[] term : terms) {
+            Postings p = postings.get(new String(term, StandardCharsets.UTF_8));
+            termTable.putInt(termBytes.size());
+            termTable.putInt(term.length);
+            termTable.putInt(p.size);
+            termTable.putLong(postingsOut.size());
+            termBytes.write(term, 0, term.length);
+            int[] bounds = p.encode(postingsOut, docLengths);
+            termTable.putInt(bounds[0]);
+            termTable.putInt(bounds[1]);
+        }
+
+        ByteBuffer docTable = ByteBuffer.allocate(docs.size() * DOC_ENTRY_SIZE);
+        for (int[] doc : docs) {
+            docTable.putInt(doc[0]).putInt(doc[1]).putInt(doc[2]);
+        }
+
+        long docsOffset = HEADER_SIZE;
+        long termsOffset = docsOffset + docTable.capacity();
+        long termBytesOffset = termsOffset + termTable.capacity();
+        long postingsOffset = termBytesOffset + termBytes.size();
+        long storedOffset = postingsOffset + postingsOut.size();
+        if (storedOffset + stored.size() > Integer.MAX_VALUE) {
+            throw new IOException("Segment too large to memory-map: " + file);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(docs.size()).putInt(terms.size()).putLong(totalLength);
+        header.putLong(docsOffset).putLong(termsOffset).putLong(termBytesOffset)
+                .putLong(postingsOffset).putLong(storedOffset);
+        header.flip();
+        docTable.flip();
+        termTable.flip();
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            writeFully(channel, docTable);
+            writeFully(channel, termTable);
+            writeFully(channel, ByteBuffer.wrap(termBytes.toByteArray()));
+            writeFully(channel, ByteBuffer.wrap(postingsOut.toByteArray()));
+            writeFully(channel, ByteBuffer.wrap(stored.toByteArray()));
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        VByte.write(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static String snippet(String content) {
+        return content != null && content.length() > 200
+                ? content.substring(0, 200) + "..."
+                : content;
+    }
+
+    private static class Postings {
+        int[] ords = new int[4];
+        int[] tfs = new int[4];
+        int size;
+
+        void add(int ord, int tf) {
+            if (size == ords.length) {
+                ords = Arrays.copyOf(ords, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            ords[size] = ord;
+            tfs[size] = tf;
+            size++;
+        }
+
+        /**
+         * Write the blocks and return the term-wide {maxTf, minLength}
+         */
+        int[] encode(ByteArrayOutputStream out, int[] docLengths) {
+            int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            ByteBuffer skips = ByteBuffer.allocate(blockCount * SKIP_ENTRY_SIZE);
+            int termMaxTf = 0;
+            int termMinLength = Integer.MAX_VALUE;
+
+            int prev = -1;
+            for (int start = 0; start < size; start += BLOCK_SIZE) {
+                int end = Math.min(start + BLOCK_SIZE, size);
+                int maxTf = 0;
+                int minLength = Integer.MAX_VALUE;
+                for (int i = start; i < end; i++) {
+                    maxTf = Math.max(maxTf, tfs[i]);
+                    minLength = Math.min(minLength, docLengths[ords[i]]);
+                }
+                termMaxTf = Math.max(termMaxTf, maxTf);
+                termMinLength = Math.min(termMinLength, minLength);
+
+                skips.putInt(ords[end - 1]).putInt(data.size()).putInt(maxTf).putInt(minLength);
+                for (int i = start; i < end; i++) {
+                    VByte.write(data, ords[i] - prev);
+                    prev = ords[i];
+                }
+                for (int i = start; i < end; i++) {
+                    VByte.write(data, tfs[i]);
+                }
+            }
+            out.write(skips.array(), 0, skips.capacity());
+            byte[] bytes = data.toByteArray();
+            out.write(bytes, 0, bytes.length);
+            return new int[] { termMaxTf, termMinLength };
+        }
+    }
+}
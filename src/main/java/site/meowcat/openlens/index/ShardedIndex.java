@@ -0,0 +1,265 @@
+package site.meowcat.openlens.index;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One generation of the search index, split into shards by page id hash,
+ * each shard a directory of memory-mapped segment files.
+ * Queries fan out to every shard in parallel and the per-shard top-k lists
+ * are merged into a single ranking.
+ */
+public class ShardedIndex {
+    public static final int DEFAULT_SHARDS = Integer.getInteger(
+            "openlens.index.shards", Runtime.getRuntime().availableProcessors());
+    public static final String DEFAULT_DIR = System.getProperty("openlens.index.dir", "index");
+    public static final long DEFAULT_SHARD_TIMEOUT_MS = Long.getLong("openlens.index.shardTimeoutMs", 500);
+
+    public static final int MAX_DOCS_PER_SEGMENT = 100_000;
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private final long generation;
+    private final IndexShard[] shards;
+    private final ForkJoinPool pool;
+    private final long shardTimeoutMs;
+    private final StaticScores staticScores;
+
+    ShardedIndex(long generation, IndexShard[] shards, ForkJoinPool pool, long shardTimeoutMs,
+            StaticScores staticScores) {
+        this.generation = generation;
+        this.shards = shards;
+        this.pool = pool;
+        this.shardTimeoutMs = shardTimeoutMs;
+        this.staticScores = staticScores;
+    }
+
+    public static boolean exists(Path dir) {
+        return IndexManifest.exists(dir);
+    }
+
+    /**
+     * Open the generation described by the current manifest, with the latest page scores.
+     * Segments already mapped by a previous generation are reused rather than remapped.
+     */
+    static ShardedIndex open(Path dir, ForkJoinPool pool, long shardTimeoutMs, Map<Path, Segment> reuse)
+            throws IOException {
+        IndexManifest manifest = IndexManifest.read(dir);
+        IndexShard[] shards = new IndexShard[manifest.shards.size()];
+        for (int i = 0; i < shards.length; i++) {
+            List<Segment> segments = new ArrayList<>();
+            for (String name : manifest.shards.get(i)) {
+                Path file = shardDir(dir, i).resolve(name);
+                Segment segment = reuse.get(file);
+                segments.add(segment != null ? segment : Segment.open(file));
+            }
+            shards[i] = new IndexShard(segments);
+        }
+        return new ShardedIndex(manifest.generation, shards, pool, shardTimeoutMs, StaticScores.load(dir));
+    }
+
+    /**
+     * Write segment files for every scraped page in the database into dir.
+     * The index is built in a sibling directory and renamed into place when complete.
+     */
+    public static void build(DatabaseConfig dbConfig, Path dir, int shardCount) throws SQLException, IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        Path tmp = dir.resolveSibling(dir.getFileName() + ".building");
+        deleteRecursively(tmp);
+
+        SegmentWriter[] writers = new SegmentWriter[shardCount];
+        List<List<String>> segments = new ArrayList<>();
+        long nextSegment = 1;
+        for (int i = 0; i < shardCount; i++) {
+            writers[i] = new SegmentWriter();
+            segments.add(new ArrayList<>());
+            Files.createDirectories(shardDir(tmp, i));
+        }
+
+        String sql = "SELECT id, url, title, content FROM pages WHERE content IS NOT NULL ORDER BY id";
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(500);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    int shard = shardFor(id, shardCount);
+                    writers[shard].add(id, rs.getString("url"), rs.getString("title"), rs.getString("content"));
+                    if (writers[shard].docCount() >= MAX_DOCS_PER_SEGMENT) {
+                        String name = segmentName(nextSegment++);
+                        writers[shard].write(shardDir(tmp, shard).resolve(name));
+                        segments.get(shard).add(name);
+                        writers[shard] = new SegmentWriter();
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < shardCount; i++) {
+            if (writers[i].docCount() > 0) {
+                String name = segmentName(nextSegment++);
+                writers[i].write(shardDir(tmp, i).resolve(name));
+                segments.get(i).add(name);
+            }
+        }
+        new IndexManifest(1, nextSegment, segments).write(tmp);
+
+        deleteRecursively(dir);
+        Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Path shardDir(Path dir, int shard) {
+        return dir.resolve(String.format("shard-%02d", shard));
+    }
+
+    static String segmentName(long number) {
+        return String.format("seg_%08d%s", number, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * The number in a segment file name, or 0 if the name is not one segmentName makes
+     */
+    static long segmentNumber(String name) {
+        if (!name.startsWith("seg_") || !name.endsWith(SEGMENT_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(4, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public static int shardFor(int pageId, int shardCount) {
+        // Murmur3 finalizer so consecutive ids spread evenly
+        int h = pageId;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shardCount);
+    }
+
+    StaticScores staticScores() {
+        return staticScores;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    IndexShard shard(int i) {
+        return shards[i];
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int docCount() {
+        int total = 0;
+        for (IndexShard shard : shards) {
+            total += shard.docCount();
+        }
+        return total;
+    }
+
+    /**
+     * Run the query on every shard in parallel and merge the top results.
+     * Shards that miss the timeout contribute nothing rather than stalling the query.
+     */
+    public List<Hit> search(String query, int limit) {
+        return search(query, limit, shardTimeoutMs);
+    }
+
+    /**
+     * Search with a deadline for this query. Shards stop scoring once it passes,
+     * and the query never waits longer than the shard timeout either.
+     */
+    public List<Hit> search(String query, int limit, long timeoutMs) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long waitMs = Math.max(1, Math.min(timeoutMs, shardTimeoutMs));
+        QueryStats stats = collectStats(terms, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs));
+
+        List<CompletableFuture<List<Hit>>> futures = new ArrayList<>(shards.length);
+        for (IndexShard shard : shards) {
+            futures.add(CompletableFuture
+                    .supplyAsync(() -> shard.search(stats, limit), pool)
+                    .completeOnTimeout(Collections.emptyList(), waitMs, TimeUnit.MILLISECONDS)
+                    .exceptionally(e -> {
+                        System.err.println("Shard search failed: " + e.getMessage());
+                        return Collections.emptyList();
+                    }));
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(Hit::compare);
+        for (CompletableFuture<List<Hit>> future : futures) {
+            for (Hit hit : future.join()) {
+                top.add(hit);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<Hit> merged = new ArrayList<>(top);
+        merged.sort((a, b) -> Hit.compare(b, a));
+        return merged;
+    }
+
+    private QueryStats collectStats(List<String> terms, long deadlineNanos) {
+        long docCount = 0;
+        long totalLength = 0;
+        long[] docFreqs = new long[terms.size()];
+        for (IndexShard shard : shards) {
+            docCount += shard.docCount();
+            totalLength += shard.totalLength();
+            for (int t = 0; t < terms.size(); t++) {
+                docFreqs[t] += shard.docFreq(terms.get(t));
+            }
+        }
+
+        float[] idf = new float[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            // Masked copies of re-indexed pages still count towards docFreq
+            idf[t] = Bm25.idf(docCount, Math.min(docFreqs[t], docCount));
+        }
+        float avgDocLength = docCount > 0 ? Math.max(1f, (float) totalLength / docCount) : 1f;
+        return new QueryStats(terms, idf, avgDocLength, staticScores, deadlineNanos);
+    }
+}
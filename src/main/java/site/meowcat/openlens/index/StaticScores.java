@@ -0,0 +1,124 @@
+package site.meowcat.openlens.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Query-independent page scores (PageRank) that are added to every BM25 score.
+ *
+ * Stored as a "pagerank" file in the index directory: a header, then page ids
+ * in ascending order followed by their raw scores. On load, raw scores are
+ * turned into boosts of WEIGHT * ln(1 + score * pageCount), so an average page
+ * gets about WEIGHT * ln 2 and hubs a few times that. Lookups are a binary
+ * search over the id array.
+ */
+public class StaticScores {
+    public static final String FILE_NAME = "pagerank";
+    public static final float WEIGHT = Float.parseFloat(System.getProperty("openlens.rank.weight", "1.0"));
+
+    private static final int MAGIC = 0x4F4C5052;
+    private static final int VERSION = 1;
+
+    static final StaticScores NONE = new StaticScores(new int[0], new float[0], 0);
+
+    private final int[] pageIds;
+    private final float[] boosts;
+    private final long modified;
+    private final float max;
+
+    private StaticScores(int[] pageIds, float[] boosts, long modified) {
+        this.pageIds = pageIds;
+        this.boosts = boosts;
+        this.modified = modified;
+        float m = 0;
+        for (float boost : boosts) {
+            m = Math.max(m, boost);
+        }
+        this.max = m;
+    }
+
+    /**
+     * Boost for a page, or 0 for pages the last ranking run did not see
+     */
+    float score(int pageId) {
+        int i = Arrays.binarySearch(pageIds, pageId);
+        return i >= 0 ? boosts[i] : 0;
+    }
+
+    /**
+     * Largest boost of any page, which every score upper bound has to include
+     */
+    float max() {
+        return max;
+    }
+
+    long modified() {
+        return modified;
+    }
+
+    /**
+     * Write scores for the given pages; ids must be in ascending order
+     */
+    public static void write(Path dir, int[] pageIds, float[] scores) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pageIds.length);
+            for (int id : pageIds) {
+                out.writeInt(id);
+            }
+            for (float score : scores) {
+                out.writeFloat(score);
+            }
+        }
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static long lastModified(Path dir) {
+        try {
+            Path file = dir.resolve(FILE_NAME);
+            return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Load the scores in dir, or NONE if PageRank has not been run yet
+     */
+    static StaticScores load(Path dir) throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        long modified = lastModified(dir);
+        if (modified == 0) {
+            return NONE;
+        }
+        try (InputStream stream = Files.newInputStream(file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a page score file: " + file);
+            }
+            int count = in.readInt();
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+            }
+            float[] boosts = new float[count];
+            for (int i = 0; i < count; i++) {
+                boosts[i] = WEIGHT * (float) Math.log1p((double) in.readFloat() * count);
+            }
+            return new StaticScores(ids, boosts, modified);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package site.meowcat.openlens.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text into lowercase alphanumeric terms for indexing and querying
+ */
+public final class Tokenizer {
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                addTerm(terms, current);
+            }
+        }
+        if (current.length() > 0) {
+            addTerm(terms, current);
+        }
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, StringBuilder current) {
+        // Very long "words" are usually base64 blobs or minified junk
+        if (current.length() <= MAX_TERM_LENGTH) {
+            terms.add(current.toString());
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,19 @@
+package site.meowcat.openlens.index;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Variable-byte integer coding: 7 bits per byte, high bit set on every byte but the last
+ */
+final class VByte {
+    private VByte() {
+    }
+
+    static void write(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
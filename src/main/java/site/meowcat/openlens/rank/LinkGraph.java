@@ -0,0 +1,236 @@
+package site.meowcat.openlens.rank;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The crawled link graph in compressed sparse row form, held entirely in
+ * primitive arrays: about 4 bytes per edge plus 12 per page.
+ *
+ * Pages are numbered 0..n-1 in page id order. Edges are stored by target,
+ * because PageRank pulls from in-links: the sources linking to node v are
+ * inSources[inOffsets[v]] up to inSources[inOffsets[v + 1]]. Self-links,
+ * duplicate links and links to URLs that are not in pages are dropped.
+ */
+public class LinkGraph {
+    private final int[] pageIds;
+    private final int[] outDegree;
+    private final int[] inOffsets;
+    private final int[] inSources;
+
+    LinkGraph(int[] pageIds, int[] outDegree, int[] inOffsets, int[] inSources) {
+        this.pageIds = pageIds;
+        this.outDegree = outDegree;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+    }
+
+    public int nodeCount() {
+        return pageIds.length;
+    }
+
+    public long edgeCount() {
+        return inSources.length;
+    }
+
+    /**
+     * Page ids by node number, ascending
+     */
+    public int[] pageIds() {
+        return pageIds;
+    }
+
+    int outDegree(int node) {
+        return outDegree[node];
+    }
+
+    int inStart(int node) {
+        return inOffsets[node];
+    }
+
+    int inEnd(int node) {
+        return inOffsets[node + 1];
+    }
+
+    int inSource(int i) {
+        return inSources[i];
+    }
+
+    /**
+     * Read every page and link from the database
+     */
+    public static LinkGraph load(DatabaseConfig dbConfig) throws SQLException {
+        try (Connection conn = dbConfig.getConnection()) {
+            // Nodes, and a fingerprint -> node lookup for resolving link targets
+            IntArray ids = new IntArray(1024);
+            LongIntMap nodeByHash = new LongIntMap(1024);
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, url_hash FROM pages ORDER BY id")) {
+                stmt.setFetchSize(10_000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        nodeByHash.put(rs.getLong("url_hash"), ids.size());
+                        ids.add(rs.getInt("id"));
+                    }
+                }
+            }
+            int[] pageIds = ids.toArray();
+            int n = pageIds.length;
+
+            // Out-links in source order; the primary key returns them sorted by src_id
+            int[] outOffsets = new int[n + 1];
+            IntArray outTargets = new IntArray(Math.max(1024, n * 4));
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT src_id, dst_hash FROM links ORDER BY src_id")) {
+                stmt.setFetchSize(10_000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int node = -1;
+                    int srcId = Integer.MIN_VALUE;
+                    while (rs.next()) {
+                        int id = rs.getInt("src_id");
+                        if (id != srcId) {
+                            int next = Arrays.binarySearch(pageIds, id);
+                            if (next < 0) {
+                                continue; // Source deleted while we were reading
+                            }
+                            while (node < next) {
+                                outOffsets[++node] = outTargets.size();
+                            }
+                            srcId = id;
+                        }
+                        int target = nodeByHash.get(rs.getLong("dst_hash"));
+                        if (target >= 0 && target != node) {
+                            outTargets.add(target);
+                        }
+                    }
+                    while (node < n) {
+                        outOffsets[++node] = outTargets.size();
+                    }
+                }
+            }
+            return transpose(pageIds, outOffsets, outTargets);
+        }
+    }
+
+    private static LinkGraph transpose(int[] pageIds, int[] outOffsets, IntArray outTargets) {
+        int n = pageIds.length;
+        int[] outDegree = new int[n];
+        int[] inOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            outDegree[u] = outOffsets[u + 1] - outOffsets[u];
+            for (int i = outOffsets[u]; i < outOffsets[u + 1]; i++) {
+                inOffsets[outTargets.get(i) + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inSources = new int[outTargets.size()];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int i = outOffsets[u]; i < outOffsets[u + 1]; i++) {
+                inSources[fill[outTargets.get(i)]++] = u;
+            }
+        }
+        return new LinkGraph(pageIds, outDegree, inOffsets, inSources);
+    }
+
+    /**
+     * Growable int array, to avoid boxing tens of millions of edges
+     */
+    private static class IntArray {
+        private int[] values;
+        private int size;
+
+        IntArray(int capacity) {
+            values = new int[capacity];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1) + 1);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Open-addressing map from URL fingerprint to node number
+     */
+    private static class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        LongIntMap(int capacity) {
+            int slots = Integer.highestOneBit(Math.max(16, capacity * 2) - 1) << 1;
+            keys = new long[slots];
+            values = new int[slots];
+            used = new boolean[slots];
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        /**
+         * The value for key, or -1
+         */
+        int get(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
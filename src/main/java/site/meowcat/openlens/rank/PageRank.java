@@ -0,0 +1,150 @@
+package site.meowcat.openlens.rank;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+import site.meowcat.openlens.index.StaticScores;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PageRank by power iteration over a LinkGraph, parallelised with fork-join.
+ *
+ * Each iteration every node pulls rank from its in-links, so workers write
+ * only their own range of the output and need no synchronisation. Rank held
+ * by pages without out-links is spread evenly over all pages. Iteration stops
+ * once the total change in rank (L1) falls below TOLERANCE.
+ */
+public class PageRank {
+    public static final double DAMPING = 0.85;
+    public static final double TOLERANCE = 1e-6;
+    public static final int MAX_ITERATIONS = 100;
+
+    // Nodes per fork-join leaf task
+    private static final int GRAIN = 8192;
+
+    private final LinkGraph graph;
+    private final ForkJoinPool pool;
+
+    public PageRank(LinkGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    /**
+     * Load the link graph, rank it and write the scores into the index directory,
+     * where running search servers pick them up on their next refresh
+     */
+    public static void run(DatabaseConfig dbConfig, Path indexDir) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        LinkGraph graph = LinkGraph.load(dbConfig);
+        System.out.println("Loaded link graph: " + graph.nodeCount() + " pages, " + graph.edgeCount()
+                + " links in " + (System.currentTimeMillis() - start) + "ms");
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            double[] rank = new PageRank(graph, pool).compute();
+            float[] scores = new float[rank.length];
+            for (int i = 0; i < rank.length; i++) {
+                scores[i] = (float) rank[i];
+            }
+            StaticScores.write(indexDir, graph.pageIds(), scores);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("PageRank written to " + indexDir + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Rank of every node, summing to 1
+     */
+    public double[] compute() {
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return new double[0];
+        }
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] share = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+
+        for (int iteration = 1; iteration <= MAX_ITERATIONS; iteration++) {
+            double[] current = rank;
+            // What each page passes along every out-link; dangling pages give theirs to everyone
+            double dangling = sum(0, n, (lo, hi) -> {
+                double lost = 0;
+                for (int u = lo; u < hi; u++) {
+                    int degree = graph.outDegree(u);
+                    if (degree == 0) {
+                        share[u] = 0;
+                        lost += current[u];
+                    } else {
+                        share[u] = current[u] / degree;
+                    }
+                }
+                return lost;
+            });
+
+            double base = (1 - DAMPING) / n + DAMPING * dangling / n;
+            double[] updated = next;
+            double delta = sum(0, n, (lo, hi) -> {
+                double change = 0;
+                for (int v = lo; v < hi; v++) {
+                    double incoming = 0;
+                    for (int i = graph.inStart(v), end = graph.inEnd(v); i < end; i++) {
+                        incoming += share[graph.inSource(i)];
+                    }
+                    updated[v] = base + DAMPING * incoming;
+                    change += Math.abs(updated[v] - current[v]);
+                }
+                return change;
+            });
+
+            next = rank;
+            rank = updated;
+            if (delta < TOLERANCE) {
+                System.out.println("PageRank converged after " + iteration + " iterations");
+                return rank;
+            }
+        }
+        System.out.println("PageRank stopped after " + MAX_ITERATIONS + " iterations without converging");
+        return rank;
+    }
+
+    private interface RangeSum {
+        double apply(int lo, int hi);
+    }
+
+    private double sum(int lo, int hi, RangeSum body) {
+        return pool.invoke(new RangeTask(lo, hi, body));
+    }
+
+    private static class RangeTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final RangeSum body;
+
+        RangeTask(int lo, int hi, RangeSum body) {
+            this.lo = lo;
+            this.hi = hi;
+            this.body = body;
+        }
+
+        @Override
+        protected Double compute() {
+            if (hi - lo <= GRAIN) {
+                return body.apply(lo, hi);
+            }
+            int mid = (lo + hi) >>> 1;
+            RangeTask left = new RangeTask(lo, mid, body);
+            left.fork();
+            double right = new RangeTask(mid, hi, body).compute();
+            return left.join() + right;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package site.meowcat.openlens.scraper;
+
+import site.meowcat.openlens.archive.ArchivedResponse;
+import site.meowcat.openlens.archive.FetchArchive;
+import site.meowcat.openlens.index.IndexWriter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays the fetch archive through extraction, blacklist filtering and storage
+ * without touching the network. Only the latest fetch of each URL is replayed.
+ * Segments are split into runs of consecutive records that workers read
+ * sequentially and process in parallel. Index changes are committed after
+ * every run, so the index writer never buffers more than a few runs of pages.
+ */
+public class ArchiveReprocessor {
+    private static final int RECORDS_PER_TASK = 500;
+
+    private final WebScraper scraper;
+    private final IndexWriter indexWriter;
+    private final int threads;
+
+    /**
+     * indexWriter may be null when the scraper does not publish to a search index
+     */
+    public ArchiveReprocessor(WebScraper scraper, IndexWriter indexWriter, int threads) {
+        this.scraper = scraper;
+        this.indexWriter = indexWriter;
+        this.threads = threads;
+    }
+
+    public void run(Path archiveDir) throws IOException, InterruptedException {
+        Map<Path, List<FetchArchive.Entry>> entries = FetchArchive.latestEntries(archiveDir);
+        int total = entries.values().stream().mapToInt(List::size).sum();
+        System.out.println("Reprocessing " + total + " archived pages from " + entries.size()
+                + " segments with " + threads + " threads...");
+
+        AtomicInteger stored = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<Path, List<FetchArchive.Entry>> segment : entries.entrySet()) {
+            List<FetchArchive.Entry> records = segment.getValue();
+            for (int from = 0; from < records.size(); from += RECORDS_PER_TASK) {
+                List<FetchArchive.Entry> run = records.subList(from,
+                        Math.min(from + RECORDS_PER_TASK, records.size()));
+                futures.add(pool.submit(() -> replay(segment.getKey(), run, stored, rejected)));
+            }
+        }
+        pool.shutdown();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println("Reprocessing task failed: " + e.getCause());
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println("\n=== Reprocessing Complete ===");
+        System.out.println("Stored: " + stored.get() + ", rejected: " + rejected.get()
+                + " (" + (total * 1000L / elapsed) + " pages/sec)");
+    }
+
+    private void replay(Path file, List<FetchArchive.Entry> run, AtomicInteger stored, AtomicInteger rejected) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (FetchArchive.Entry entry : run) {
+                ArchivedResponse response = FetchArchive.read(channel, entry);
+                WebScraper.ScrapeResult result = scraper.reprocess(response);
+                if (result.success) {
+                    stored.incrementAndGet();
+                    for (String link : result.discoveredLinks) {
+                        scraper.queueUrl(link, result.linkDepth);
+                    }
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading archive segment " + file + ": " + e.getMessage());
+        }
+        if (indexWriter != null) {
+            try {
+                indexWriter.commit();
+            } catch (IOException e) {
+                System.err.println("Error committing search index: " + e.getMessage());
+            }
+        }
+    }
+}
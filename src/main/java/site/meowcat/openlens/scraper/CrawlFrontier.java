@@ -0,0 +1,275 @@
+package site.meowcat.openlens.scraper;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which URL to fetch next, best first.
+ *
+ * The best few thousand candidates are kept in an in-memory heap. Everything
+ * else stays in the pages table, which holds each page's static priority
+ * (from in-links and link depth) under an index that returns the queue in
+ * order, so the heap is refilled with a short index scan rather than a sort.
+ * When the heap overflows, its tail is dropped; those URLs are still queued
+ * in the table and come back on a later refill.
+ *
+ * A candidate's score is its static priority, plus a bonus for staleness
+ * (largest for pages never fetched), minus a penalty that grows with the
+ * number of pages already fetched from its host. The host penalty changes as
+ * the crawl runs, so scores are rechecked when a candidate reaches the top.
+ * When a queued page gains in-links or moves closer to the seeds, its entry
+ * is replaced by one with the new priority; the old one is skipped when it
+ * surfaces.
+ */
+public class CrawlFrontier {
+    /** Pages are refetched once they are this old */
+    public static final long RECRAWL_AFTER_MS = 7L * 24 * 60 * 60 * 1000;
+
+    static final double DEPTH_PENALTY = 0.5;
+    private static final double STALENESS_WEIGHT = 1.0;
+    // Age at which a fetched page counts as fully stale
+    private static final long MAX_STALENESS_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final int CAPACITY = Integer.getInteger("openlens.frontier.capacity", 10_000);
+    // Pages from one host at which its candidates lose as much as a page never fetched gains
+    private static final int HOST_BUDGET = Integer.getInteger("openlens.frontier.hostBudget", 1000);
+    // How long an exhausted table is trusted before looking again, for recrawls coming due
+    private static final long RECHECK_MS = 60_000;
+
+    private final DatabaseConfig dbConfig;
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>(
+            (a, b) -> Double.compare(b.score, a.score));
+    // The current entry of every queued URL; heap entries not in here are stale
+    private final Map<Long, Candidate> inHeap = new HashMap<>();
+    // Pages fetched per host: the stored count on first sight, plus what this process has handed out
+    private final Map<Integer, Long> hostLoad = new HashMap<>();
+
+    // True when the last refill found everything the table had, so only new offers can add to it
+    private boolean exhausted;
+    private long lastRefill;
+
+    public CrawlFrontier(DatabaseConfig dbConfig) {
+        this.dbConfig = dbConfig;
+    }
+
+    /**
+     * Static part of a page's priority, as stored in pages.priority
+     */
+    public static double priority(int inlinks, int depth) {
+        return Math.log1p(Math.max(0, inlinks)) - DEPTH_PENALTY * depth;
+    }
+
+    /**
+     * priority() as SQL, for updates that change inlinks or depth in place.
+     * SET expressions see the row's old values, so callers pass the new ones.
+     */
+    static String prioritySql(String inlinks, String depth) {
+        return "LN(1 + GREATEST(" + inlinks + ", 0)) - " + DEPTH_PENALTY + " * " + depth;
+    }
+
+    private static class Candidate {
+        final String url;
+        final long urlHash;
+        final int hostId;
+        final double priority;
+        // Epoch millis, or 0 for pages never fetched
+        final long scrapedAt;
+        double score;
+
+        Candidate(String url, long urlHash, int hostId, double priority, long scrapedAt) {
+            this.url = url;
+            this.urlHash = urlHash;
+            this.hostId = hostId;
+            this.priority = priority;
+            this.scrapedAt = scrapedAt;
+        }
+    }
+
+    /**
+     * The best URL to fetch now, or null if nothing is due
+     */
+    public synchronized String next() {
+        if (inHeap.size() < CAPACITY / 4
+                && (!exhausted || System.currentTimeMillis() - lastRefill > RECHECK_MS)) {
+            refill();
+        }
+        long now = System.currentTimeMillis();
+        while (!heap.isEmpty()) {
+            Candidate top = heap.poll();
+            if (inHeap.get(top.urlHash) != top) {
+                continue; // Replaced by reprioritize()
+            }
+            double current = score(top, now);
+            // Its host has been fetched from since it was scored; let it sink if it no longer wins
+            if (current < top.score && !heap.isEmpty() && current < heap.peek().score) {
+                top.score = current;
+                heap.add(top);
+                continue;
+            }
+            inHeap.remove(top.urlHash);
+            hostLoad.merge(top.hostId, 1L, Long::sum);
+            return top.url;
+        }
+        return null;
+    }
+
+    /**
+     * Consider a URL that has just been added to the queue
+     */
+    public synchronized void offer(String url, long urlHash, int hostId, double priority) {
+        if (inHeap.containsKey(urlHash)) {
+            return;
+        }
+        add(new Candidate(url, urlHash, hostId, priority, 0));
+    }
+
+    /**
+     * Whether a URL is waiting in memory, so that changes to its priority matter now
+     */
+    public synchronized boolean contains(long urlHash) {
+        return inHeap.containsKey(urlHash);
+    }
+
+    /**
+     * Apply a new static priority to a queued URL. URLs not held in memory are
+     * ignored: they are read back from the table, priority included, on refill.
+     */
+    public synchronized void reprioritize(long urlHash, double priority) {
+        Candidate old = inHeap.get(urlHash);
+        if (old == null || old.priority == priority) {
+            return;
+        }
+        add(new Candidate(old.url, urlHash, old.hostId, priority, old.scrapedAt));
+    }
+
+    public synchronized int size() {
+        return inHeap.size();
+    }
+
+    private void add(Candidate candidate) {
+        candidate.score = score(candidate, System.currentTimeMillis());
+        inHeap.put(candidate.urlHash, candidate);
+        heap.add(candidate);
+        if (heap.size() > 2 * CAPACITY) {
+            trim();
+        }
+    }
+
+    private double score(Candidate candidate, long now) {
+        double staleness = candidate.scrapedAt == 0
+                ? 1
+                : Math.min(1, (now - candidate.scrapedAt) / (double) MAX_STALENESS_MS);
+        return candidate.priority
+                + STALENESS_WEIGHT * staleness
+                - hostLoad(candidate.hostId) / (double) HOST_BUDGET;
+    }
+
+    private long hostLoad(int hostId) {
+        Long load = hostLoad.get(hostId);
+        if (load != null) {
+            return load;
+        }
+        long stored = 0;
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT scraped_count FROM hosts WHERE id = ?")) {
+            stmt.setInt(1, hostId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    stored = rs.getLong(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Could not read crawl budget for host " + hostId + ": " + e.getMessage());
+        }
+        hostLoad.put(hostId, stored);
+        return stored;
+    }
+
+    /**
+     * Keep the best CAPACITY candidates; the rest remain queued in the table
+     */
+    private void trim() {
+        PriorityQueue<Candidate> kept = new PriorityQueue<>(heap.comparator());
+        while (kept.size() < CAPACITY && !heap.isEmpty()) {
+            Candidate candidate = heap.poll();
+            if (inHeap.get(candidate.urlHash) == candidate) {
+                kept.add(candidate);
+            }
+        }
+        for (Candidate dropped : heap) {
+            inHeap.remove(dropped.urlHash, dropped);
+        }
+        heap.clear();
+        heap.addAll(kept);
+        exhausted = false;
+    }
+
+    /**
+     * Top up the heap from the table: pages never fetched, by static priority,
+     * and pages due for a recrawl, oldest first. Both come straight off
+     * idx_pages_frontier.
+     */
+    private void refill() {
+        String queued = """
+                SELECT url, url_hash, host_id, priority, scraped_at FROM pages
+                WHERE scraped_at IS NULL
+                ORDER BY scraped_at NULLS FIRST, priority DESC
+                LIMIT ?
+                """;
+        // The lower bound keeps the range scan from starting at the NULLs
+        String due = """
+                SELECT url, url_hash, host_id, priority, scraped_at FROM pages
+                WHERE scraped_at > ? AND scraped_at < ?
+                ORDER BY scraped_at
+                LIMIT ?
+                """;
+
+        long now = System.currentTimeMillis();
+        int wanted = CAPACITY;
+        int recrawls = CAPACITY / 4;
+        int found = 0;
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement queuedStmt = conn.prepareStatement(queued);
+                PreparedStatement dueStmt = conn.prepareStatement(due)) {
+            queuedStmt.setInt(1, wanted);
+            found += load(queuedStmt, now);
+            dueStmt.setTimestamp(1, new Timestamp(0));
+            dueStmt.setTimestamp(2, new Timestamp(now - RECRAWL_AFTER_MS));
+            dueStmt.setInt(3, recrawls);
+            int dueFound = load(dueStmt, now);
+            found += dueFound;
+            exhausted = found - dueFound < wanted && dueFound < recrawls;
+        } catch (SQLException e) {
+            System.err.println("Error refilling crawl frontier: " + e.getMessage());
+        }
+        lastRefill = now;
+    }
+
+    private int load(PreparedStatement stmt, long now) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+                long urlHash = rs.getLong("url_hash");
+                if (inHeap.containsKey(urlHash)) {
+                    continue;
+                }
+                Timestamp scrapedAt = rs.getTimestamp("scraped_at");
+                Candidate candidate = new Candidate(rs.getString("url"), urlHash, rs.getInt("host_id"),
+                        rs.getDouble("priority"), scrapedAt != null ? scrapedAt.getTime() : 0);
+                candidate.score = score(candidate, now);
+                inHeap.put(urlHash, candidate);
+                heap.add(candidate);
+            }
+        }
+        return rows;
+    }
+}
@@ -9,13 +9,28 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import site.meowcat.openlens.archive.FetchArchive;
+import site.meowcat.openlens.config.DatabaseConfig;
 import site.meowcat.openlens.export.StaticExporter;
+import site.meowcat.openlens.index.IndexWriter;
+import site.meowcat.openlens.index.ShardedIndex;
+import site.meowcat.openlens.rank.PageRank;
+import site.meowcat.openlens.stats.CrawlStats;
 
 /**
  * Main entry point for the web scraper
  */
 public class ScraperMain {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--reprocess")) {
+            reprocessArchive();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--pagerank")) {
+            rankPages();
+            return;
+        }
+
         String urlFile = args.length > 0 ? args[0] : "urls.txt";
 
         System.out.println("=== crawl-chan >~< ===");
@@ -24,6 +39,37 @@ public class ScraperMain {
         WebScraper scraper = new WebScraper();
         int pagesScraped = 0;
 
+        // Publish pages to the search index so a running SearchAPI sees them without a restart
+        IndexWriter indexWriter = openIndexWriter();
+        if (indexWriter != null) {
+            scraper.setIndexWriter(indexWriter);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    indexWriter.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing search index: " + e.getMessage());
+                }
+            }));
+        }
+
+        // Keep raw responses so extraction changes can be replayed without refetching
+        FetchArchive archive = openArchive();
+        if (archive != null) {
+            scraper.setArchive(archive);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing fetch archive: " + e.getMessage());
+                }
+            }));
+        }
+
+        // Counters are kept in memory and flushed in the background
+        CrawlStats stats = CrawlStats.getInstance();
+        stats.startSyncing(CrawlStats.DEFAULT_SYNC_MS);
+        Runtime.getRuntime().addShutdownHook(new Thread(stats::close));
+
         // 1. Seed the database queue
         List<String> seedUrls = loadUrls(urlFile);
         for (String url : seedUrls) {
@@ -39,6 +85,7 @@ public class ScraperMain {
             String url = scraper.getNextUrlToScrape();
 
             if (url == null) {
+                commitIndex(indexWriter);
                 System.out.println("Queue empty or all pages scraped recently. Waiting 60s...");
                 try {
                     Thread.sleep(60000);
@@ -50,13 +97,14 @@ public class ScraperMain {
             }
 
             WebScraper.ScrapeResult result = scraper.scrapeUrl(url);
+            commitIndex(indexWriter);
 
             if (result.success) {
                 pagesScraped++;
 
                 // Add new links to queue
                 for (String newLink : result.discoveredLinks) {
-                    scraper.queueUrl(newLink);
+                    scraper.queueUrl(newLink, result.linkDepth);
                     // Also save to text file for backup/seed
                     saveUrl(urlFile, newLink);
                 }
@@ -91,6 +139,67 @@ public class ScraperMain {
         scraper.printStats();
     }
 
+    /**
+     * Re-run extraction, blacklist filtering and storage over the fetch archive
+     */
+    private static void reprocessArchive() {
+        System.out.println("=== crawl-chan >~< (reprocessing archive) ===");
+        WebScraper scraper = new WebScraper();
+        try (IndexWriter indexWriter = openIndexWriter()) {
+            scraper.setIndexWriter(indexWriter);
+            new ArchiveReprocessor(scraper, indexWriter, Runtime.getRuntime().availableProcessors())
+                    .run(java.nio.file.Paths.get(FetchArchive.DEFAULT_DIR));
+            CrawlStats.getInstance().close();
+        } catch (IOException e) {
+            System.err.println("Error reprocessing archive: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        StaticExporter.export("frontend/search-data.js");
+    }
+
+    /**
+     * Compute PageRank over the stored link graph for the search engine to rank with
+     */
+    private static void rankPages() {
+        System.out.println("=== crawl-chan >~< (ranking pages) ===");
+        try {
+            PageRank.run(DatabaseConfig.getInstance(), java.nio.file.Paths.get(ShardedIndex.DEFAULT_DIR));
+        } catch (Exception e) {
+            System.err.println("Error computing PageRank: " + e.getMessage());
+        }
+    }
+
+    private static FetchArchive openArchive() {
+        try {
+            return new FetchArchive(java.nio.file.Paths.get(FetchArchive.DEFAULT_DIR));
+        } catch (IOException e) {
+            System.err.println("Fetch archive unavailable, raw pages will not be kept: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static IndexWriter openIndexWriter() {
+        try {
+            return IndexWriter.open(DatabaseConfig.getInstance(), java.nio.file.Paths.get(ShardedIndex.DEFAULT_DIR));
+        } catch (Exception e) {
+            System.err.println("Search index unavailable, pages will only be stored in the database: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void commitIndex(IndexWriter indexWriter) {
+        if (indexWriter == null) {
+            return;
+        }
+        try {
+            indexWriter.maybeCommit();
+        } catch (IOException e) {
+            System.err.println("Error committing search index: " + e.getMessage());
+        }
+    }
+
     private static void pushUpdatesToGit() {
         try {
             System.out.println(">> Committing and pushing updates to Git...");
@@ -0,0 +1,272 @@
+package site.meowcat.openlens.scraper;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.IDN;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rewrites URLs into one canonical form so that trivial variants of the same
+ * page share a single row in the crawl queue.
+ *
+ * Scheme and host are lowercased (internationalized hosts in their ASCII
+ * "xn--" form), default ports, fragments and trailing
+ * slashes are dropped, dot segments are resolved, tracking parameters are
+ * removed and the remaining query parameters are sorted.
+ *
+ * Extra parameters to strip can be configured per host in url-rules.txt,
+ * one host per line followed by parameter names. A host also covers its
+ * subdomains, "*" covers every host, and a name ending in "*" matches any
+ * parameter with that prefix.
+ */
+public class UrlCanonicalizer {
+    private static final String RULES_FILE = "url-rules.txt";
+
+    // Stripped everywhere, whatever the rules file says
+    private static final List<String> TRACKING_PARAMS = List.of(
+            "utm_*", "gclid", "gclsrc", "dclid", "fbclid", "msclkid", "yclid", "igshid",
+            "mc_cid", "mc_eid", "_ga", "_gl", "_hsenc", "_hsmi", "mkt_tok", "oly_anon_id", "oly_enc_id");
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final List<String> globalParams = new ArrayList<>(TRACKING_PARAMS);
+    private final Map<String, List<String>> hostParams = new HashMap<>();
+
+    public UrlCanonicalizer() {
+        loadRules();
+    }
+
+    private void loadRules() {
+        try (BufferedReader reader = new BufferedReader(new FileReader(RULES_FILE))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                List<String> params = parts[0].equals("*")
+                        ? globalParams
+                        : hostParams.computeIfAbsent(parts[0].toLowerCase(Locale.ROOT), h -> new ArrayList<>());
+                for (int i = 1; i < parts.length; i++) {
+                    params.add(parts[i].toLowerCase(Locale.ROOT));
+                }
+            }
+        } catch (IOException e) {
+            // Optional: without it only the built-in tracking parameters are stripped
+        }
+    }
+
+    /**
+     * The canonical form of an absolute http(s) URL, or null if it is not one
+     */
+    public String canonicalize(String url) {
+        if (url == null) {
+            return null;
+        }
+        url = url.trim();
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+        URI uri;
+        try {
+            uri = new URI(escapeIllegal(url));
+        } catch (URISyntaxException e) {
+            return null;
+        }
+
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!("http".equals(scheme) || "https".equals(scheme)) || uri.getRawAuthority() == null) {
+            return null;
+        }
+        String userInfo = uri.getRawUserInfo();
+        String host = uri.getHost();
+        int port = uri.getPort();
+        if (host == null) {
+            // java.net.URI only accepts strict hostnames; real ones have underscores and unicode
+            String authority = uri.getRawAuthority();
+            int at = authority.lastIndexOf('@');
+            if (at >= 0) {
+                userInfo = authority.substring(0, at);
+                authority = authority.substring(at + 1);
+            }
+            int colon = authority.lastIndexOf(':');
+            if (colon >= 0) {
+                String digits = authority.substring(colon + 1);
+                if (!digits.isEmpty()) {
+                    if (!digits.chars().allMatch(c -> c >= '0' && c <= '9') || digits.length() > 5) {
+                        return null;
+                    }
+                    port = Integer.parseInt(digits);
+                }
+                authority = authority.substring(0, colon);
+            }
+            host = hostName(authority);
+            if (host == null) {
+                return null;
+            }
+        }
+        try {
+            host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder canonical = new StringBuilder(url.length());
+        canonical.append(scheme).append("://");
+        if (userInfo != null) {
+            canonical.append(userInfo).append('@');
+        }
+        canonical.append(host);
+        if (port != -1 && !(port == 80 && scheme.equals("http")) && !(port == 443 && scheme.equals("https"))) {
+            canonical.append(':').append(port);
+        }
+
+        canonical.append(canonicalPath(uri.getRawPath()));
+
+        String query = canonicalQuery(host, uri.getRawQuery());
+        if (!query.isEmpty()) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * A registry-style host as escapeIllegal left it, decoded back to text, or
+     * null if it holds anything but letters, digits, '-', '_' and '.'
+     */
+    private static String hostName(String rawHost) {
+        String host;
+        try {
+            host = URLDecoder.decode(rawHost.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (host.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.')) {
+                return null;
+            }
+        }
+        return host;
+    }
+
+    private static String canonicalPath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        // A leading "//" would be parsed as an authority; normalize() collapses the other repeated slashes anyway
+        int slashes = 0;
+        while (slashes < rawPath.length() && rawPath.charAt(slashes) == '/') {
+            slashes++;
+        }
+        String path = URI.create(rawPath.substring(Math.max(0, slashes - 1))).normalize().getRawPath();
+        // normalize() keeps leading ".." segments, which mean nothing at the root
+        while (path.startsWith("/../")) {
+            path = path.substring(3);
+        }
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() || path.equals("/..") ? "/" : path;
+    }
+
+    private String canonicalQuery(String host, String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> stripped = strippedParams(host);
+        List<String> kept = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = (eq < 0 ? param : param.substring(0, eq)).toLowerCase(Locale.ROOT);
+            if (!matchesAny(name, stripped)) {
+                kept.add(param);
+            }
+        }
+        Collections.sort(kept);
+        return String.join("&", kept);
+    }
+
+    private List<String> strippedParams(String host) {
+        if (hostParams.isEmpty()) {
+            return globalParams;
+        }
+        List<String> params = new ArrayList<>(globalParams);
+        // Walk up the domain: a.b.example.com, b.example.com, example.com, com
+        for (String suffix = host; suffix != null;) {
+            List<String> rules = hostParams.get(suffix);
+            if (rules != null) {
+                params.addAll(rules);
+            }
+            int dot = suffix.indexOf('.');
+            suffix = dot < 0 ? null : suffix.substring(dot + 1);
+        }
+        return params;
+    }
+
+    private static boolean matchesAny(String name, List<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*")
+                    ? name.startsWith(pattern.substring(0, pattern.length() - 1))
+                    : name.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Links in the wild contain spaces, pipes, brackets and raw unicode that java.net.URI rejects
+    private static String escapeIllegal(String url) {
+        // Brackets are only legal around an IPv6 host
+        int authority = url.indexOf("://");
+        int pathStart = authority < 0 ? 0 : url.indexOf('/', authority + 3);
+        if (pathStart < 0) {
+            pathStart = url.length();
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            boolean legal = c < 128 && (Character.isLetterOrDigit(c) || "-._~:/?@!$&'()*+,;=%".indexOf(c) >= 0
+                    || (i < pathStart && (c == '[' || c == ']')));
+            if (legal) {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(url.length() + 16).append(url, 0, i);
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                escaped.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            i = end - 1;
+        }
+        return escaped == null ? url : escaped.toString();
+    }
+}
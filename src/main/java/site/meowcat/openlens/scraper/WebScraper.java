@@ -1,6 +1,11 @@
 package site.meowcat.openlens.scraper;
 
+import site.meowcat.openlens.archive.ArchivedResponse;
+import site.meowcat.openlens.archive.FetchArchive;
 import site.meowcat.openlens.config.DatabaseConfig;
+import site.meowcat.openlens.config.UrlFingerprint;
+import site.meowcat.openlens.index.IndexWriter;
+import site.meowcat.openlens.stats.CrawlStats;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -11,8 +16,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Web scraper that fetches pages and stores them in the database
@@ -21,14 +30,36 @@ public class WebScraper {
     private static final int TIMEOUT_MS = 60000; // 60 seconds
     private static final String USER_AGENT = "Mozilla/5.0 (compatible; SearchEngineBot/1.0)";
     private Set<String> blacklist = new HashSet<>();
+    private Pattern blacklistPattern;
 
     private final DatabaseConfig dbConfig;
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+    private final CrawlStats stats;
+    private final CrawlFrontier frontier;
+    private IndexWriter indexWriter;
+    private FetchArchive archive;
 
     public WebScraper() {
         this.dbConfig = DatabaseConfig.getInstance();
+        this.stats = CrawlStats.getInstance();
+        this.frontier = new CrawlFrontier(dbConfig);
         loadBlacklist();
     }
 
+    /**
+     * Publish every stored page to this search index as well as the database
+     */
+    public void setIndexWriter(IndexWriter indexWriter) {
+        this.indexWriter = indexWriter;
+    }
+
+    /**
+     * Keep the raw response of every successful fetch in this archive
+     */
+    public void setArchive(FetchArchive archive) {
+        this.archive = archive;
+    }
+
     private void loadBlacklist() {
         try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader("blacklist.txt"))) {
             String line;
@@ -41,6 +72,19 @@ public class WebScraper {
         } catch (IOException e) {
             System.err.println("Warning: Could not load blacklist.txt: " + e.getMessage());
         }
+
+        // One alternation instead of a regex per word; \b keeps "Sussex" from matching "sex"
+        if (!blacklist.isEmpty()) {
+            StringBuilder regex = new StringBuilder("\\b(");
+            for (String badWord : blacklist) {
+                if (regex.length() > 4) {
+                    regex.append('|');
+                }
+                regex.append(Pattern.quote(badWord));
+            }
+            regex.append(")\\b");
+            blacklistPattern = Pattern.compile(regex.toString());
+        }
     }
 
     /**
@@ -56,11 +100,24 @@ public class WebScraper {
             // but we return empty links so we don't re-queue everything immediately.
             // OR: we might want to return links if we want to deep crawl known paths?
             // For now, let's treat it as "Skipped" but valid.
+            stats.add(CrawlStats.SKIPPED, 1);
             return new ScrapeResult(true, Collections.emptySet());
         }
 
         System.out.println("Crawling: " + url);
 
+        ScrapeResult result = fetchAndProcess(url);
+        if (result.success) {
+            stats.add(CrawlStats.CRAWLED, 1);
+        } else {
+            // Push failures to the back of the queue; they are retried on the normal recrawl schedule
+            stats.add(CrawlStats.FAILED, 1);
+            markAttempted(url);
+        }
+        return result;
+    }
+
+    private ScrapeResult fetchAndProcess(String url) {
         String urlMatch = getBlacklistedTerm(url);
         if (urlMatch != null) {
             System.out.println("✗ Skipped (URL blacklisted by '" + urlMatch + "'): " + url);
@@ -69,64 +126,199 @@ public class WebScraper {
 
         try {
             // Fetch the page
-            Document doc = Jsoup.connect(url)
+            org.jsoup.Connection.Response response = Jsoup.connect(url)
                     .userAgent(USER_AGENT)
                     .timeout(TIMEOUT_MS)
-                    .get();
+                    .execute();
+            archiveResponse(url, response);
 
-            // Extract title
-            String title = doc.title();
+            return processDocument(url, response.parse(), false, System.currentTimeMillis());
+
+        } catch (IOException e) {
+            System.err.println("✗ Error fetching " + url + ": " + e.getMessage());
+            return new ScrapeResult(false, Collections.emptySet());
+        } catch (SQLException e) {
+            System.err.println("✗ Database error for " + url + ": " + e.getMessage());
+            return new ScrapeResult(false, Collections.emptySet());
+        }
+    }
 
-            // Check title for blacklisted words
-            String titleMatch = getBlacklistedTerm(title);
-            if (titleMatch != null) {
-                System.out.println("✗ Skipped (Title blacklisted by '" + titleMatch + "'): " + title);
+    /**
+     * Run an archived response through extraction, blacklist filtering and storage
+     * exactly as it was when fetched, keeping its original fetch time. Pages that
+     * the current blacklist rejects are removed.
+     */
+    public ScrapeResult reprocess(ArchivedResponse response) {
+        try {
+            if (getBlacklistedTerm(response.url) != null) {
+                removePage(response.url);
                 return new ScrapeResult(false, Collections.emptySet());
             }
+            // Decoded the way a live fetch is: declared charset, else detected from the markup
+            Document doc = Jsoup.parse(new java.io.ByteArrayInputStream(response.body), response.charset(),
+                    response.targetUrl);
+            return processDocument(response.url, doc, true, response.fetchedAt);
+        } catch (IOException e) {
+            System.err.println("✗ Error parsing archived " + response.url + ": " + e.getMessage());
+            return new ScrapeResult(false, Collections.emptySet());
+        } catch (SQLException e) {
+            System.err.println("✗ Database error for " + response.url + ": " + e.getMessage());
+            return new ScrapeResult(false, Collections.emptySet());
+        }
+    }
+
+    private ScrapeResult processDocument(String url, Document doc, boolean reprocessing, long fetchedAt)
+            throws SQLException {
+        // Extract title
+        String title = doc.title();
+
+        // Check title for blacklisted words
+        String titleMatch = getBlacklistedTerm(title);
+        if (titleMatch != null) {
+            System.out.println("✗ Skipped (Title blacklisted by '" + titleMatch + "'): " + title);
+            if (reprocessing) {
+                removePage(url);
+            }
+            return new ScrapeResult(false, Collections.emptySet());
+        }
 
-            String content = extractContent(doc);
+        String content = extractContent(doc);
 
-            // Check content for blacklisted words
-            String contentMatch = getBlacklistedTerm(content);
-            if (contentMatch != null) {
-                System.out.println("✗ Skipped (Content blacklisted by '" + contentMatch + "')");
-                return new ScrapeResult(false, Collections.emptySet());
+        // Check content for blacklisted words
+        String contentMatch = getBlacklistedTerm(content);
+        if (contentMatch != null) {
+            System.out.println("✗ Skipped (Content blacklisted by '" + contentMatch + "')");
+            if (reprocessing) {
+                removePage(url);
             }
+            return new ScrapeResult(false, Collections.emptySet());
+        }
 
-            Set<String> links = extractLinks(doc, url);
+        Set<String> links = extractLinks(doc, url);
 
-            // Store in database
-            storeInDatabase(url, title, content);
+        // Store in database
+        StoredPage page = storeInDatabase(url, title, content, fetchedAt);
+        int pageId = page.id;
+        if (indexWriter != null && pageId > 0) {
+            try {
+                indexWriter.addPage(pageId, url, title, content);
+            } catch (IOException e) {
+                System.err.println("Error indexing " + url + ": " + e.getMessage());
+            }
+        }
+        if (pageId > 0) {
+            storeLinks(pageId, links);
+        }
 
-            // Store images (using the original doc which still has image tags)
-            storeImages(url, doc);
+        // Store images (using the original doc which still has image tags)
+        if (pageId > 0) {
+            storeImages(pageId, doc);
+        }
 
-            System.out.println("✓ Indexed: " + title + " (" + links.size() + " new links)");
-            return new ScrapeResult(true, links);
+        System.out.println("✓ Indexed: " + title + " (" + links.size() + " new links)");
+        return new ScrapeResult(true, links, page.depth + 1);
+    }
 
-        } catch (IOException e) {
-            System.err.println("✗ Error fetching " + url + ": " + e.getMessage());
-            return new ScrapeResult(false, Collections.emptySet());
+    private void markAttempted(String url) {
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement first = conn.prepareStatement(
+                        "UPDATE pages SET scraped_at = CURRENT_TIMESTAMP WHERE url_hash = ? AND scraped_at IS NULL");
+                PreparedStatement retry = conn.prepareStatement(
+                        "UPDATE pages SET scraped_at = CURRENT_TIMESTAMP WHERE url_hash = ?")) {
+            long urlHash = UrlFingerprint.of(url);
+            first.setLong(1, urlHash);
+            if (first.executeUpdate() > 0) {
+                stats.add(CrawlStats.QUEUED_PAGES, -1);
+            } else {
+                retry.setLong(1, urlHash);
+                retry.executeUpdate();
+            }
         } catch (SQLException e) {
-            System.err.println("✗ Database error for " + url + ": " + e.getMessage());
-            return new ScrapeResult(false, Collections.emptySet());
+            System.err.println("Warning: Could not record failed attempt for " + url + ": " + e.getMessage());
+        }
+    }
+
+    private void archiveResponse(String url, org.jsoup.Connection.Response response) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.append(url, response.url().toString(), response.statusCode(), response.contentType(),
+                    response.bodyAsBytes());
+        } catch (IOException e) {
+            System.err.println("Warning: Could not archive " + url + ": " + e.getMessage());
+        }
+    }
+
+    private void removePage(String url) throws SQLException {
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement select = conn.prepareStatement("""
+                        SELECT id, host_id, content IS NOT NULL AS scraped, scraped_at IS NULL AS queued
+                        FROM pages WHERE url_hash = ?
+                        """);
+                PreparedStatement delete = conn.prepareStatement("DELETE FROM pages WHERE id = ?")) {
+            select.setLong(1, UrlFingerprint.of(url));
+            int pageId;
+            int hostId;
+            boolean scraped;
+            boolean queued;
+            try (java.sql.ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                pageId = rs.getInt("id");
+                hostId = rs.getInt("host_id");
+                scraped = rs.getBoolean("scraped");
+                queued = rs.getBoolean("queued");
+            }
+            Set<Long> targets = new HashSet<>();
+            try (PreparedStatement links = conn.prepareStatement("SELECT dst_hash FROM links WHERE src_id = ?")) {
+                links.setInt(1, pageId);
+                try (java.sql.ResultSet rs = links.executeQuery()) {
+                    while (rs.next()) {
+                        targets.add(rs.getLong(1));
+                    }
+                }
+            }
+            Set<Integer> images = new HashSet<>();
+            try (PreparedStatement shown = conn.prepareStatement("SELECT image_id FROM page_images WHERE page_id = ?")) {
+                shown.setInt(1, pageId);
+                try (java.sql.ResultSet rs = shown.executeQuery()) {
+                    while (rs.next()) {
+                        images.add(rs.getInt(1));
+                    }
+                }
+            }
+            delete.setInt(1, pageId);
+            if (delete.executeUpdate() == 0) {
+                return;
+            }
+            // Its links and page_images rows go with the page through ON DELETE CASCADE
+            adjustInlinks(conn, targets, -1);
+            int orphaned = deleteUnusedImages(conn, images);
+            stats.add(CrawlStats.PAGES, -1);
+            stats.add(CrawlStats.SCRAPED_PAGES, scraped ? -1 : 0);
+            stats.add(CrawlStats.QUEUED_PAGES, queued ? -1 : 0);
+            stats.add(CrawlStats.IMAGES, -orphaned);
+            stats.addHost(hostId, -1, scraped ? -1 : 0);
+            if (indexWriter != null) {
+                try {
+                    indexWriter.deletePage(pageId);
+                } catch (IOException e) {
+                    System.err.println("Error removing " + url + " from the search index: " + e.getMessage());
+                }
+            }
+            System.out.println("   > Removed previously stored page: " + url);
         }
     }
 
     // Returns the blacklisted term encountered, or null if none
     private String getBlacklistedTerm(String text) {
-        if (text == null)
+        if (text == null || blacklistPattern == null)
             return null;
-        String lowerText = text.toLowerCase();
 
-        for (String badWord : blacklist) {
-            // Use regex for whole word matching to avoid "Sussex" matching "sex"
-            // \b matches word boundaries
-            if (lowerText.matches(".*\\b" + java.util.regex.Pattern.quote(badWord) + "\\b.*")) {
-                return badWord;
-            }
-        }
-        return null;
+        Matcher matcher = blacklistPattern.matcher(text.toLowerCase());
+        return matcher.find() ? matcher.group(1) : null;
     }
 
     private Set<String> extractLinks(Document doc, String baseUrl) {
@@ -134,19 +326,15 @@ public class WebScraper {
         Elements elements = doc.select("a[href]");
 
         for (Element element : elements) {
-            String link = element.attr("abs:href");
-            // Basic validation and blacklist check
-            if (isValidLink(link) && getBlacklistedTerm(link) == null) {
+            String link = canonicalizer.canonicalize(element.attr("abs:href"));
+            // Canonicalization rejects anything but http(s); then the blacklist check
+            if (link != null && getBlacklistedTerm(link) == null) {
                 links.add(link);
             }
         }
         return links;
     }
 
-    private boolean isValidLink(String url) {
-        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
-    }
-
     private String extractContent(Document doc) {
         // Remove script and style elements
         doc.select("script, style, nav, footer, header").remove();
@@ -163,58 +351,95 @@ public class WebScraper {
     }
 
     /**
-     * Get the next URL that needs to be scraped.
-     * Priorities:
-     * 1. Never scraped (scraped_at IS NULL)
-     * 2. Scraped > 7 days ago
+     * Get the next URL that needs to be scraped: the best-scoring page that has
+     * never been fetched or was fetched more than a week ago (see CrawlFrontier)
      */
     public String getNextUrlToScrape() {
-        String sql = """
-                SELECT url FROM pages
-                WHERE scraped_at IS NULL
-                   OR scraped_at < CURRENT_TIMESTAMP - INTERVAL '7' DAY
-                ORDER BY scraped_at ASC NULLS FIRST
-                LIMIT 1
-                """;
-
-        try (Connection conn = dbConfig.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                var rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                return rs.getString("url");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error getting next URL: " + e.getMessage());
-        }
-        return null;
+        return frontier.next();
     }
 
     /**
-     * Add a URL to the queue (if not already present).
-     * If present, does nothing (preserves existing scrape timestamp).
+     * Queue a seed URL
      */
     public void queueUrl(String url) {
-        if (!isValidLink(url) || getBlacklistedTerm(url) != null) {
+        queueUrl(url, 0);
+    }
+
+    /**
+     * Add a URL to the queue in canonical form (if not already present), at the
+     * given number of links from a seed. If present, does nothing except move it
+     * closer to the seeds (preserves existing scrape timestamp).
+     */
+    public void queueUrl(String url, int depth) {
+        url = canonicalizer.canonicalize(url);
+        if (url == null || getBlacklistedTerm(url) != null) {
             return;
         }
 
-        // Use INSERT and ignore unique constraint violation
-        String sql = "INSERT INTO pages (url, scraped_at) VALUES (?, NULL)";
+        // Most discovered links are already queued, so try the insert before anything else
+        String sql = """
+                INSERT INTO pages (url_hash, host_id, url, scraped_at, depth, inlinks, priority)
+                VALUES (?, ?, ?, NULL, ?, 0, ?)
+                ON CONFLICT DO NOTHING
+                """;
+        String shallower = "UPDATE pages SET depth = ?, priority = " + CrawlFrontier.prioritySql("inlinks", "?")
+                + " WHERE url_hash = ? AND depth > ?";
+
+        long urlHash = UrlFingerprint.of(url);
+        try (Connection conn = dbConfig.getConnection()) {
+            int hostId = dbConfig.hostId(conn, UrlFingerprint.host(url));
+            double priority = CrawlFrontier.priority(0, depth);
+            int inserted;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlHash);
+                stmt.setInt(2, hostId);
+                stmt.setString(3, url);
+                stmt.setInt(4, depth);
+                stmt.setDouble(5, priority);
+                inserted = stmt.executeUpdate();
+            }
 
-        try (Connection conn = dbConfig.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (inserted == 0) {
+                // Already queued: keep the old scrape time but record a shorter path from the seeds
+                try (PreparedStatement stmt = conn.prepareStatement(shallower)) {
+                    stmt.setInt(1, depth);
+                    stmt.setInt(2, depth);
+                    stmt.setLong(3, urlHash);
+                    stmt.setInt(4, depth);
+                    if (stmt.executeUpdate() > 0) {
+                        reprioritize(conn, Set.of(urlHash));
+                    }
+                }
+                return;
+            }
 
-            stmt.setString(1, url);
-            stmt.executeUpdate();
+            // Pages that linked here before it was queued; later ones are counted by storeLinks
+            int inlinkCount;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM links WHERE dst_hash = ?")) {
+                stmt.setLong(1, urlHash);
+                try (java.sql.ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    inlinkCount = rs.getInt(1);
+                }
+            }
+            if (inlinkCount > 0) {
+                priority = CrawlFrontier.priority(inlinkCount, depth);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE pages SET inlinks = ?, priority = ? WHERE url_hash = ?")) {
+                    stmt.setInt(1, inlinkCount);
+                    stmt.setDouble(2, priority);
+                    stmt.setLong(3, urlHash);
+                    stmt.executeUpdate();
+                }
+            }
+
+            stats.add(CrawlStats.PAGES, 1);
+            stats.add(CrawlStats.QUEUED_PAGES, 1);
+            stats.addHost(hostId, 1, 0);
+            frontier.offer(url, urlHash, hostId, priority);
 
         } catch (SQLException e) {
-            // Check for unique constraint violation (H2 error codes 23505)
-            if (!e.getSQLState().startsWith("23")) {
-                System.err.println("Error queuing URL " + url + ": " + e.getMessage());
-            }
-            // If it's a duplicate, we just ignore it (do nothing), preserving the old
-            // scrape time.
+            System.err.println("Error queuing URL " + url + ": " + e.getMessage());
         }
     }
 
@@ -222,96 +447,355 @@ public class WebScraper {
         public final boolean success;
         public final Set<String> discoveredLinks;
         public final String failureReason;
+        /** Depth to queue the discovered links at: one more than the page's own */
+        public final int linkDepth;
 
         public ScrapeResult(boolean success, Set<String> discoveredLinks) {
             this(success, discoveredLinks, null);
         }
 
         public ScrapeResult(boolean success, Set<String> discoveredLinks, String failureReason) {
+            this(success, discoveredLinks, failureReason, 1);
+        }
+
+        public ScrapeResult(boolean success, Set<String> discoveredLinks, int linkDepth) {
+            this(success, discoveredLinks, null, linkDepth);
+        }
+
+        private ScrapeResult(boolean success, Set<String> discoveredLinks, String failureReason, int linkDepth) {
             this.success = success;
             this.discoveredLinks = discoveredLinks;
             this.failureReason = failureReason;
+            this.linkDepth = linkDepth;
+        }
+    }
+
+    private static class StoredPage {
+        final int id;
+        final int depth;
+
+        StoredPage(int id, int depth) {
+            this.id = id;
+            this.depth = depth;
         }
     }
 
     /**
-     * Store the scraped page in the database
+     * Store the page as fetched at fetchedAt and return its page id and link depth
      */
-    private void storeInDatabase(String url, String title, String content) throws SQLException {
+    private StoredPage storeInDatabase(String url, String title, String content, long fetchedAt)
+            throws SQLException {
         // Use MERGE to Insert or Update
         String sql = """
-                MERGE INTO pages (url, title, content, scraped_at)
-                KEY (url)
-                VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+                MERGE INTO pages (url_hash, host_id, url, title, content, scraped_at)
+                KEY (url_hash)
+                VALUES (?, ?, ?, ?, ?, ?)
                 """;
 
+        long urlHash = UrlFingerprint.of(url);
         try (Connection conn = dbConfig.getConnection();
+                PreparedStatement before = conn.prepareStatement(
+                        "SELECT content IS NOT NULL AS scraped, scraped_at IS NULL AS queued FROM pages WHERE url_hash = ?");
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, url);
-            stmt.setString(2, title);
-            stmt.setString(3, content);
+            // The previous state of the row decides which counters move
+            before.setLong(1, urlHash);
+            boolean existed;
+            boolean wasScraped = false;
+            boolean wasQueued = false;
+            try (java.sql.ResultSet rs = before.executeQuery()) {
+                existed = rs.next();
+                if (existed) {
+                    wasScraped = rs.getBoolean("scraped");
+                    wasQueued = rs.getBoolean("queued");
+                }
+            }
+
+            int hostId = dbConfig.hostId(conn, UrlFingerprint.host(url));
+            stmt.setLong(1, urlHash);
+            stmt.setInt(2, hostId);
+            stmt.setString(3, url);
+            stmt.setString(4, title);
+            stmt.setString(5, content);
+            stmt.setTimestamp(6, new java.sql.Timestamp(fetchedAt));
 
             stmt.executeUpdate();
+
+            stats.add(CrawlStats.PAGES, existed ? 0 : 1);
+            stats.add(CrawlStats.SCRAPED_PAGES, wasScraped ? 0 : 1);
+            stats.add(CrawlStats.QUEUED_PAGES, wasQueued ? -1 : 0);
+            stats.addHost(hostId, existed ? 0 : 1, wasScraped ? 0 : 1);
+            stats.scrapedAt(fetchedAt);
+
+            try (PreparedStatement idStmt = conn.prepareStatement("SELECT id, depth FROM pages WHERE url_hash = ?")) {
+                idStmt.setLong(1, urlHash);
+                try (java.sql.ResultSet rs = idStmt.executeQuery()) {
+                    return rs.next() ? new StoredPage(rs.getInt("id"), rs.getInt("depth")) : new StoredPage(-1, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the page's outgoing links in the link graph, keeping the in-link
+     * counts of the pages they point at up to date
+     */
+    private void storeLinks(int pageId, Set<String> links) throws SQLException {
+        try (Connection conn = dbConfig.getConnection();
+                PreparedStatement select = conn.prepareStatement("SELECT dst_hash FROM links WHERE src_id = ?");
+                PreparedStatement delete = conn.prepareStatement("DELETE FROM links WHERE src_id = ? AND dst_hash = ?");
+                PreparedStatement insert = conn.prepareStatement("INSERT INTO links (src_id, dst_hash) VALUES (?, ?)")) {
+            conn.setAutoCommit(false);
+            try {
+                // Canonical links are distinct strings, but their fingerprints are the primary key
+                Set<Long> targets = new HashSet<>();
+                for (String link : links) {
+                    targets.add(UrlFingerprint.of(link));
+                }
+                Set<Long> removed = new HashSet<>();
+                select.setInt(1, pageId);
+                try (java.sql.ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        long dstHash = rs.getLong(1);
+                        if (!targets.remove(dstHash)) {
+                            removed.add(dstHash);
+                        }
+                    }
+                }
+                // Only the difference is written; what is left in targets is new
+                for (long dstHash : removed) {
+                    delete.setInt(1, pageId);
+                    delete.setLong(2, dstHash);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+                for (long dstHash : targets) {
+                    insert.setInt(1, pageId);
+                    insert.setLong(2, dstHash);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                adjustInlinks(conn, targets, 1);
+                adjustInlinks(conn, removed, -1);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Add delta to the in-link count and crawl priority of each target that is a known page
+     */
+    private void adjustInlinks(Connection conn, Set<Long> targets, int delta) throws SQLException {
+        if (targets.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE pages SET inlinks = GREATEST(inlinks + ?, 0), priority = "
+                + CrawlFrontier.prioritySql("inlinks + ?", "depth") + " WHERE url_hash = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (long dstHash : targets) {
+                stmt.setInt(1, delta);
+                stmt.setInt(2, delta);
+                stmt.setLong(3, dstHash);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        reprioritize(conn, targets);
+    }
+
+    /**
+     * Hand the stored priority of each page the frontier is holding back to it,
+     * so a page that gains in-links or moves closer to the seeds is fetched sooner
+     */
+    private void reprioritize(Connection conn, Set<Long> urlHashes) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT priority FROM pages WHERE url_hash = ?")) {
+            for (long urlHash : urlHashes) {
+                if (!frontier.contains(urlHash)) {
+                    continue;
+                }
+                stmt.setLong(1, urlHash);
+                try (java.sql.ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        frontier.reprioritize(urlHash, rs.getDouble(1));
+                    }
+                }
+            }
         }
     }
 
-    private void storeImages(String pageUrl, Document doc) {
+    /**
+     * Bring the page's images up to date, writing only what changed since the
+     * page was last stored. Image URLs are shared by every page that shows them
+     * and deleted once no page does.
+     */
+    private void storeImages(int pageId, Document doc) {
         try {
             Elements images = doc.select("img[src]");
 
             System.out.println("   > Found " + images.size() + " <img> tags on page.");
 
-            // First delete existing images for this page to prevent duplicates
+            // Valid images by source fingerprint; a repeated image keeps its first alt text
+            Map<Long, String> srcs = new HashMap<>();
+            Map<Long, String> alts = new HashMap<>();
+            for (Element img : images) {
+                String src = img.attr("abs:src");
+                String alt = img.attr("alt");
+
+                if (isValidImage(src)) {
+                    long srcHash = UrlFingerprint.of(src);
+                    if (srcs.putIfAbsent(srcHash, src) == null) {
+                        alts.put(srcHash, alt.length() > 255 ? alt.substring(0, 255) : alt);
+                    }
+                }
+            }
+
             try (Connection conn = dbConfig.getConnection();
-                    PreparedStatement delStmt = conn.prepareStatement("DELETE FROM images WHERE page_url = ?")) {
-                delStmt.setString(1, pageUrl);
-                delStmt.executeUpdate();
+                    PreparedStatement current = conn.prepareStatement("""
+                            SELECT pi.image_id, s.src_hash, pi.alt FROM page_images pi
+                            JOIN image_sources s ON s.id = pi.image_id
+                            WHERE pi.page_id = ?
+                            """);
+                    PreparedStatement unlink = conn.prepareStatement(
+                            "DELETE FROM page_images WHERE page_id = ? AND image_id = ?");
+                    PreparedStatement relabel = conn.prepareStatement(
+                            "UPDATE page_images SET alt = ? WHERE page_id = ? AND image_id = ?");
+                    PreparedStatement link = conn.prepareStatement(
+                            "INSERT INTO page_images (page_id, image_id, alt) VALUES (?, ?, ?)")) {
+                conn.setAutoCommit(false);
+                try {
+                    // Whatever is left in srcs after this is new to the page
+                    Set<Integer> removed = new HashSet<>();
+                    current.setInt(1, pageId);
+                    try (java.sql.ResultSet rs = current.executeQuery()) {
+                        while (rs.next()) {
+                            int imageId = rs.getInt("image_id");
+                            long srcHash = rs.getLong("src_hash");
+                            if (srcs.remove(srcHash) == null) {
+                                removed.add(imageId);
+                            } else if (!alts.get(srcHash).equals(rs.getString("alt"))) {
+                                relabel.setString(1, alts.get(srcHash));
+                                relabel.setInt(2, pageId);
+                                relabel.setInt(3, imageId);
+                                relabel.addBatch();
+                            }
+                        }
+                    }
+                    relabel.executeBatch();
+
+                    for (int imageId : removed) {
+                        unlink.setInt(1, pageId);
+                        unlink.setInt(2, imageId);
+                        unlink.addBatch();
+                    }
+                    unlink.executeBatch();
+                    int orphaned = deleteUnusedImages(conn, removed);
+
+                    int created = addImageSources(conn, srcs);
+                    Map<Long, Integer> added = imageIds(conn, srcs.keySet());
+                    for (Map.Entry<Long, Integer> image : added.entrySet()) {
+                        link.setInt(1, pageId);
+                        link.setInt(2, image.getValue());
+                        link.setString(3, alts.get(image.getKey()));
+                        link.addBatch();
+                    }
+                    link.executeBatch();
+                    conn.commit();
+
+                    stats.add(CrawlStats.IMAGES, created - orphaned);
+                    if (!added.isEmpty() || !removed.isEmpty()) {
+                        System.out.println("   > Images: " + added.size() + " added, " + removed.size() + " removed ("
+                                + created + " not seen before).");
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
             }
+        } catch (Exception e) {
+            System.err.println("Error storing images for page " + pageId + ": " + e.getMessage());
+        }
+    }
 
-            String sql = "INSERT INTO images (src, alt, page_url) VALUES (?, ?, ?)";
-            int count = 0;
+    /**
+     * Store the image URLs that are not stored yet, returning how many that was
+     */
+    private int addImageSources(Connection conn, Map<Long, String> srcs) throws SQLException {
+        if (srcs.isEmpty()) {
+            return 0;
+        }
+        int created = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO image_sources (src_hash, src) VALUES (?, ?) ON CONFLICT DO NOTHING")) {
+            for (Map.Entry<Long, String> src : srcs.entrySet()) {
+                stmt.setLong(1, src.getKey());
+                stmt.setString(2, src.getValue());
+                stmt.addBatch();
+            }
+            for (int count : stmt.executeBatch()) {
+                created += count;
+            }
+        }
+        return created;
+    }
 
-            try (Connection conn = dbConfig.getConnection();
-                    PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                for (Element img : images) {
-                    String src = img.attr("abs:src");
-                    String alt = img.attr("alt");
-
-                    if (isValidImage(src)) {
-                        stmt.setString(1, src);
-                        stmt.setString(2, alt.length() > 255 ? alt.substring(0, 255) : alt);
-                        stmt.setString(3, pageUrl);
-                        stmt.addBatch();
-                        count++;
+    private Map<Long, Integer> imageIds(Connection conn, Set<Long> srcHashes) throws SQLException {
+        Map<Long, Integer> ids = new HashMap<>();
+        try (PreparedStatement select = conn.prepareStatement("SELECT id FROM image_sources WHERE src_hash = ?")) {
+            for (long srcHash : srcHashes) {
+                select.setLong(1, srcHash);
+                try (java.sql.ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        ids.put(srcHash, rs.getInt(1));
                     }
                 }
-                stmt.executeBatch();
             }
-            if (count > 0) {
-                System.out.println("   > Stored " + count + " valid images.");
+        }
+        return ids;
+    }
+
+    /**
+     * Delete those of the given images that no page shows any more, returning how many went
+     */
+    private int deleteUnusedImages(Connection conn, Set<Integer> imageIds) throws SQLException {
+        if (imageIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM image_sources WHERE id = ? AND NOT EXISTS (SELECT 1 FROM page_images WHERE image_id = ?)")) {
+            for (int imageId : imageIds) {
+                stmt.setInt(1, imageId);
+                stmt.setInt(2, imageId);
+                stmt.addBatch();
+            }
+            for (int count : stmt.executeBatch()) {
+                deleted += count;
             }
-        } catch (Exception e) {
-            System.err.println("Error storing images for " + pageUrl + ": " + e.getMessage());
         }
+        return deleted;
     }
 
     private boolean shouldScrape(String url) {
-        String sql = "SELECT scraped_at FROM pages WHERE url = ?";
+        String sql = "SELECT scraped_at FROM pages WHERE url_hash = ?";
 
         try (Connection conn = dbConfig.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, url);
+            stmt.setLong(1, UrlFingerprint.of(url));
             try (java.sql.ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     java.sql.Timestamp scrapedAt = rs.getTimestamp("scraped_at");
                     if (scrapedAt != null) {
-                        long sevenDaysInMillis = 7L * 24 * 60 * 60 * 1000;
                         long timeSinceScrape = System.currentTimeMillis() - scrapedAt.getTime();
 
-                        if (timeSinceScrape < sevenDaysInMillis) {
+                        if (timeSinceScrape < CrawlFrontier.RECRAWL_AFTER_MS) {
                             System.out.println("   > Skipped (Recently scraped: " + scrapedAt + ")");
                             return false;
                         }
@@ -337,19 +821,12 @@ public class WebScraper {
      * Get statistics about scraped pages
      */
     public void printStats() {
-        String sql = "SELECT COUNT(*) as total FROM pages";
-
-        try (Connection conn = dbConfig.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                var rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                int total = rs.getInt("total");
-                System.out.println("\n=== Scraping Statistics ===");
-                System.out.println("Total pages in database: " + total);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error getting stats: " + e.getMessage());
-        }
+        System.out.println("\n=== Scraping Statistics ===");
+        System.out.println("Total pages in database: " + stats.get(CrawlStats.PAGES)
+                + " (" + stats.get(CrawlStats.SCRAPED_PAGES) + " scraped, "
+                + stats.get(CrawlStats.QUEUED_PAGES) + " queued)");
+        System.out.println("Images: " + stats.get(CrawlStats.IMAGES));
+        System.out.println("Fetches: " + stats.get(CrawlStats.CRAWLED) + " stored, "
+                + stats.get(CrawlStats.FAILED) + " failed, " + stats.get(CrawlStats.SKIPPED) + " skipped");
     }
 }
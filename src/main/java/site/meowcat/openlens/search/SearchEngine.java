@@ -1,31 +1,91 @@
 package site.meowcat.openlens.search;
 
 import site.meowcat.openlens.config.DatabaseConfig;
-
+import site.meowcat.openlens.index.Hit;
+import site.meowcat.openlens.index.IndexReaderManager;
+import site.meowcat.openlens.index.ShardedIndex;
+import site.meowcat.openlens.stats.CrawlStats;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Search engine using PostgreSQL full-text search
+ * Search engine backed by a sharded inverted index, falling back to
+ * LIKE queries against the database until the index has been built
  */
 public class SearchEngine {
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = Long.getLong("openlens.api.queryTimeoutMs", 2000);
+
     private final DatabaseConfig dbConfig;
+    private volatile IndexReaderManager index;
 
     public SearchEngine() {
         this.dbConfig = DatabaseConfig.getInstance();
     }
 
+    /**
+     * Open the on-disk index, building it from the pages table on first run,
+     * and keep picking up new generations published by the crawler
+     */
+    public void loadIndex() {
+        long start = System.currentTimeMillis();
+        Path dir = Paths.get(ShardedIndex.DEFAULT_DIR);
+        try {
+            if (!ShardedIndex.exists(dir)) {
+                System.out.println("No search index found in " + dir + ", building from database...");
+                ShardedIndex.build(dbConfig, dir, ShardedIndex.DEFAULT_SHARDS);
+            }
+            IndexReaderManager loaded = new IndexReaderManager(dir, ShardedIndex.DEFAULT_SHARD_TIMEOUT_MS);
+            loaded.startRefreshing(IndexReaderManager.DEFAULT_REFRESH_MS);
+            IndexReaderManager previous = index;
+            index = loaded;
+            if (previous != null) {
+                previous.close();
+            }
+            ShardedIndex opened = loaded.acquire();
+            System.out.println("Opened search index with " + opened.docCount() + " pages in "
+                    + opened.shardCount() + " shards in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (SQLException | IOException e) {
+            System.err.println("Error loading search index, using database search: " + e.getMessage());
+        }
+    }
+
     /**
      * Search for pages matching the query
      */
     public List<SearchResult> search(String query, int limit) {
+        return search(query, limit, DEFAULT_QUERY_TIMEOUT_MS);
+    }
+
+    /**
+     * Search with a deadline. Index searches return what they found in time;
+     * database searches are cancelled and throw SearchTimeoutException, or throw
+     * SearchUnavailableException if no connection is free.
+     */
+    public List<SearchResult> search(String query, int limit, long timeoutMs) {
         if (query == null || query.trim().isEmpty()) {
             return new ArrayList<>();
         }
+        IndexReaderManager manager = index;
+        if (manager != null) {
+            List<SearchResult> results = new ArrayList<>();
+            for (Hit hit : manager.acquire().search(query, limit, timeoutMs)) {
+                results.add(new SearchResult(hit.id, hit.url, hit.title, hit.snippet, hit.score));
+            }
+            return results;
+        }
+        return searchDatabase(query, limit, timeoutMs);
+    }
+
+    private List<SearchResult> searchDatabase(String query, int limit, long timeoutMs) {
         List<SearchResult> results = new ArrayList<>();
         // Simple search for H2 (PostgreSQL FTS features removed)
         String sql = """
@@ -35,13 +95,20 @@ public class SearchEngine {
                 LIMIT ?
                 """;
 
-        try (Connection conn = dbConfig.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Connection conn;
+        try {
+            conn = dbConfig.getConnection();
+        } catch (SQLException e) {
+            throw new SearchUnavailableException(query, e);
+        }
+        try (conn; PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             String likeQuery = "%" + query + "%";
             stmt.setString(1, likeQuery);
             stmt.setString(2, likeQuery);
             stmt.setInt(3, limit);
+            // JDBC timeouts are in whole seconds; H2 cancels the statement when it expires
+            stmt.setQueryTimeout((int) Math.max(1, (timeoutMs + 999) / 1000));
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -56,6 +123,8 @@ public class SearchEngine {
                     results.add(new SearchResult(url, title, snippet, 0)); // Rank 0 for simple search
                 }
             }
+        } catch (SQLTimeoutException e) {
+            throw new SearchTimeoutException(query);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -64,30 +133,48 @@ public class SearchEngine {
     }
 
     /**
-     * Get database statistics
+     * Get database statistics, from the maintained counters rather than a scan of pages
      */
     public DatabaseStats getStats() {
-        String sql = """
-                SELECT
-                    COUNT(*) as total_pages,
-                    MAX(scraped_at) as last_scraped
-                FROM pages
-                """;
+        CrawlStats stats = CrawlStats.getInstance();
+        long lastScraped = stats.lastScraped();
+        return new DatabaseStats(
+                stats.get(CrawlStats.PAGES),
+                stats.get(CrawlStats.SCRAPED_PAGES),
+                stats.get(CrawlStats.QUEUED_PAGES),
+                stats.get(CrawlStats.IMAGES),
+                stats.hostCount(),
+                lastScraped > 0 ? new java.sql.Timestamp(lastScraped) : null,
+                stats.topHosts());
+    }
 
-        try (Connection conn = dbConfig.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery()) {
+    public void close() {
+        IndexReaderManager manager = index;
+        if (manager != null) {
+            manager.close();
+        }
+    }
 
-            if (rs.next()) {
-                return new DatabaseStats(
-                        rs.getInt("total_pages"),
-                        rs.getTimestamp("last_scraped"));
-            }
-        } catch (SQLException e) {
-            System.err.println("Stats error: " + e.getMessage());
+    /**
+     * Thrown when a search is cancelled because it ran past its deadline
+     */
+    public static class SearchTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SearchTimeoutException(String query) {
+            super("Search timed out: " + query);
         }
+    }
 
-        return new DatabaseStats(0, null);
+    /**
+     * Thrown when a database search cannot get a connection in time
+     */
+    public static class SearchUnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SearchUnavailableException(String query, Throwable cause) {
+            super("Search unavailable: " + query, cause);
+        }
     }
 
     /**
@@ -118,12 +205,23 @@ public class SearchEngine {
      * Database statistics data class
      */
     public static class DatabaseStats {
-        public final int totalPages;
+        public final long totalPages;
+        public final long scrapedPages;
+        public final long queuedPages;
+        public final long images;
+        public final long hosts;
         public final java.sql.Timestamp lastScraped;
+        public final List<CrawlStats.HostCount> topHosts;
 
-        public DatabaseStats(int totalPages, java.sql.Timestamp lastScraped) {
+        public DatabaseStats(long totalPages, long scrapedPages, long queuedPages, long images, long hosts,
+                java.sql.Timestamp lastScraped, List<CrawlStats.HostCount> topHosts) {
             this.totalPages = totalPages;
+            this.scrapedPages = scrapedPages;
+            this.queuedPages = queuedPages;
+            this.images = images;
+            this.hosts = hosts;
             this.lastScraped = lastScraped;
+            this.topHosts = topHosts;
         }
     }
 }
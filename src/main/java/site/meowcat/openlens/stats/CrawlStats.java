@@ -0,0 +1,341 @@
+package site.meowcat.openlens.stats;
+
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Crawl and corpus counters that are kept up to date as pages are queued,
+ * stored and removed, instead of being recounted with COUNT(*) on every
+ * request.
+ *
+ * Changes accumulate in memory and are flushed to the crawl_stats table (and
+ * the per-host counts in hosts) as increments, so several processes can
+ * update them. Reads return the last loaded values plus this process's
+ * unflushed changes and never touch the database.
+ */
+public class CrawlStats {
+    /** Rows in pages */
+    public static final String PAGES = "pages";
+    /** Pages with stored content */
+    public static final String SCRAPED_PAGES = "scraped_pages";
+    /** Pages waiting for their first fetch attempt */
+    public static final String QUEUED_PAGES = "queued_pages";
+    /** Distinct image URLs shown by stored pages */
+    public static final String IMAGES = "images";
+    /** Fetches that stored a page, since counting began */
+    public static final String CRAWLED = "crawled";
+    /** Fetches that failed or were rejected, since counting began */
+    public static final String FAILED = "failed";
+    /** URLs skipped because they were crawled recently, since counting began */
+    public static final String SKIPPED = "skipped";
+
+    // Epoch millis of the latest stored page; merged with max rather than summed
+    private static final String LAST_SCRAPED = "last_scraped";
+    private static final String[] COUNTERS = { PAGES, SCRAPED_PAGES, QUEUED_PAGES, IMAGES, CRAWLED, FAILED, SKIPPED };
+
+    public static final long DEFAULT_SYNC_MS = 5000;
+    private static final int TOP_HOSTS = 10;
+
+    private static CrawlStats instance;
+
+    private final DatabaseConfig dbConfig;
+    private final Map<String, LongAdder> pending = new HashMap<>();
+    private final LongAccumulator pendingLastScraped = new LongAccumulator(Math::max, 0);
+    private final Object hostLock = new Object();
+    private Map<Integer, long[]> pendingHosts = new HashMap<>();
+
+    private volatile Map<String, Long> persisted = Collections.emptyMap();
+    private volatile long hostCount;
+    private volatile List<HostCount> topHosts = Collections.emptyList();
+    private ScheduledExecutorService syncer;
+
+    private CrawlStats() {
+        this.dbConfig = DatabaseConfig.getInstance();
+        for (String counter : COUNTERS) {
+            pending.put(counter, new LongAdder());
+        }
+        try {
+            if (isEmpty()) {
+                recount();
+            }
+            refresh();
+        } catch (SQLException e) {
+            System.err.println("Error loading crawl statistics: " + e.getMessage());
+        }
+    }
+
+    public static synchronized CrawlStats getInstance() {
+        if (instance == null) {
+            instance = new CrawlStats();
+        }
+        return instance;
+    }
+
+    /**
+     * Page counts for one host
+     */
+    public static class HostCount {
+        public final String host;
+        public final long pages;
+        public final long scrapedPages;
+
+        HostCount(String host, long pages, long scrapedPages) {
+            this.host = host;
+            this.pages = pages;
+            this.scrapedPages = scrapedPages;
+        }
+    }
+
+    // ---- Updates ----
+
+    public void add(String counter, long delta) {
+        pending.get(counter).add(delta);
+    }
+
+    public void addHost(int hostId, long pages, long scrapedPages) {
+        synchronized (hostLock) {
+            long[] counts = pendingHosts.computeIfAbsent(hostId, id -> new long[2]);
+            counts[0] += pages;
+            counts[1] += scrapedPages;
+        }
+    }
+
+    public void scrapedAt(long epochMillis) {
+        pendingLastScraped.accumulate(epochMillis);
+    }
+
+    // ---- Reads ----
+
+    public long get(String counter) {
+        return persisted.getOrDefault(counter, 0L) + pending.get(counter).sum();
+    }
+
+    /**
+     * Time of the most recently stored page, or 0 if there is none
+     */
+    public long lastScraped() {
+        return Math.max(persisted.getOrDefault(LAST_SCRAPED, 0L), pendingLastScraped.get());
+    }
+
+    /**
+     * Number of distinct hosts seen, as of the last refresh
+     */
+    public long hostCount() {
+        return hostCount;
+    }
+
+    /**
+     * Hosts with the most pages, as of the last refresh
+     */
+    public List<HostCount> topHosts() {
+        return topHosts;
+    }
+
+    // ---- Persistence ----
+
+    /**
+     * Flush and reload every few milliseconds on a background thread
+     */
+    public synchronized void startSyncing(long intervalMs) {
+        if (syncer != null) {
+            return;
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "crawl-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+                refresh();
+            } catch (SQLException e) {
+                System.err.println("Error syncing crawl statistics: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write pending changes to the database as increments
+     */
+    public synchronized void flush() throws SQLException {
+        Map<String, Long> deltas = new HashMap<>();
+        for (String counter : COUNTERS) {
+            long delta = pending.get(counter).sumThenReset();
+            if (delta != 0) {
+                deltas.put(counter, delta);
+            }
+        }
+        long lastScraped = pendingLastScraped.getThenReset();
+        Map<Integer, long[]> hosts;
+        synchronized (hostLock) {
+            hosts = pendingHosts;
+            pendingHosts = new HashMap<>();
+        }
+        if (deltas.isEmpty() && lastScraped == 0 && hosts.isEmpty()) {
+            return;
+        }
+
+        try (Connection conn = dbConfig.getAdminConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement counters = conn.prepareStatement(
+                    "UPDATE crawl_stats SET amount = amount + ? WHERE name = ?");
+                    PreparedStatement latest = conn.prepareStatement(
+                            "UPDATE crawl_stats SET amount = GREATEST(amount, ?) WHERE name = ?");
+                    PreparedStatement perHost = conn.prepareStatement(
+                            "UPDATE hosts SET page_count = page_count + ?, scraped_count = scraped_count + ? WHERE id = ?")) {
+                for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+                    counters.setLong(1, delta.getValue());
+                    counters.setString(2, delta.getKey());
+                    counters.addBatch();
+                }
+                counters.executeBatch();
+                latest.setLong(1, lastScraped);
+                latest.setString(2, LAST_SCRAPED);
+                latest.executeUpdate();
+                for (Map.Entry<Integer, long[]> host : hosts.entrySet()) {
+                    perHost.setLong(1, host.getValue()[0]);
+                    perHost.setLong(2, host.getValue()[1]);
+                    perHost.setInt(3, host.getKey());
+                    perHost.addBatch();
+                }
+                perHost.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Put the changes back so the next flush retries them
+            deltas.forEach(this::add);
+            pendingLastScraped.accumulate(lastScraped);
+            hosts.forEach((id, counts) -> addHost(id, counts[0], counts[1]));
+            throw e;
+        }
+
+        Map<String, Long> updated = new HashMap<>(persisted);
+        deltas.forEach((counter, delta) -> updated.merge(counter, delta, Long::sum));
+        updated.merge(LAST_SCRAPED, lastScraped, Math::max);
+        persisted = updated;
+    }
+
+    /**
+     * Reload the persisted values, picking up changes flushed by other processes
+     */
+    public synchronized void refresh() throws SQLException {
+        Map<String, Long> loaded = new HashMap<>();
+        List<HostCount> top = new ArrayList<>();
+        long hosts;
+        try (Connection conn = dbConfig.getAdminConnection();
+                Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT name, amount FROM crawl_stats")) {
+                while (rs.next()) {
+                    loaded.put(rs.getString("name"), rs.getLong("amount"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM hosts")) {
+                rs.next();
+                hosts = rs.getLong(1);
+            }
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name, page_count, scraped_count FROM hosts ORDER BY page_count DESC LIMIT " + TOP_HOSTS)) {
+                while (rs.next()) {
+                    top.add(new HostCount(rs.getString("name"), rs.getLong("page_count"), rs.getLong("scraped_count")));
+                }
+            }
+        }
+        persisted = loaded;
+        hostCount = hosts;
+        topHosts = Collections.unmodifiableList(top);
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (syncer != null) {
+                syncer.shutdownNow();
+                syncer = null;
+            }
+        }
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("Error saving crawl statistics: " + e.getMessage());
+        }
+    }
+
+    private boolean isEmpty() throws SQLException {
+        try (Connection conn = dbConfig.getAdminConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM crawl_stats")) {
+            rs.next();
+            return rs.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * Count everything from scratch. Only runs once, when the statistics
+     * table is first created; from then on the counters are maintained.
+     */
+    private void recount() throws SQLException {
+        System.out.println("Counting existing pages for crawl statistics...");
+        String countPages = """
+                SELECT COUNT(*) AS pages,
+                       COUNT(content) AS scraped_pages,
+                       SUM(CASE WHEN scraped_at IS NULL THEN 1 ELSE 0 END) AS queued_pages,
+                       MAX(CASE WHEN content IS NOT NULL THEN scraped_at END) AS last_scraped
+                FROM pages
+                """;
+        String countHosts = """
+                UPDATE hosts h SET
+                    page_count = (SELECT COUNT(*) FROM pages p WHERE p.host_id = h.id),
+                    scraped_count = (SELECT COUNT(content) FROM pages p WHERE p.host_id = h.id)
+                """;
+
+        try (Connection conn = dbConfig.getAdminConnection();
+                Statement stmt = conn.createStatement();
+                PreparedStatement insert = conn.prepareStatement(
+                        "INSERT INTO crawl_stats (name, amount) VALUES (?, ?)")) {
+            Map<String, Long> values = new HashMap<>();
+            for (String counter : COUNTERS) {
+                values.put(counter, 0L);
+            }
+            try (ResultSet rs = stmt.executeQuery(countPages)) {
+                rs.next();
+                values.put(PAGES, rs.getLong("pages"));
+                values.put(SCRAPED_PAGES, rs.getLong("scraped_pages"));
+                values.put(QUEUED_PAGES, rs.getLong("queued_pages"));
+                java.sql.Timestamp last = rs.getTimestamp("last_scraped");
+                values.put(LAST_SCRAPED, last != null ? last.getTime() : 0L);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM image_sources")) {
+                rs.next();
+                values.put(IMAGES, rs.getLong(1));
+            }
+            stmt.executeUpdate(countHosts);
+
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                insert.setString(1, value.getKey());
+                insert.setLong(2, value.getValue());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package site.meowcat.openlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Block-Max WAND must return the same top k as scoring every document
+ */
+class BlockMaxWandTest {
+    private static final int VOCABULARY = 30;
+    private static final int PAGE_IDS = 1500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesExhaustiveScoring() throws IOException {
+        for (long seed = 1; seed <= 6; seed++) {
+            // Spread out: nearby seeds give java.util.Random nearly identical first draws
+            Random random = new Random(seed * 0x9E3779B97F4A7C15L);
+            Path indexDir = Files.createDirectories(dir.resolve("index-" + seed));
+
+            // Several segments re-indexing overlapping page ids, so older copies are masked
+            List<Segment> segments = new ArrayList<>();
+            int segmentCount = 1 + random.nextInt(4);
+            for (int s = 0; s < segmentCount; s++) {
+                Path file = indexDir.resolve(ShardedIndex.segmentName(s + 1));
+                writeRandomSegment(random, file, 200 + random.nextInt(600));
+                // Some in the version 1 layout, which has no stored score bounds
+                if ((s + seed) % 3 == 0) {
+                    rewriteAsVersion1(file);
+                }
+                segments.add(Segment.open(file));
+            }
+            IndexShard shard = new IndexShard(segments);
+            StaticScores staticScores = seed % 3 == 0 ? StaticScores.NONE : writeStaticScores(random, indexDir);
+
+            for (int q = 0; q < 60; q++) {
+                List<String> terms = new ArrayList<>();
+                int termCount = 1 + random.nextInt(4);
+                while (terms.size() < termCount) {
+                    String term = "t" + skewed(random);
+                    if (!terms.contains(term)) {
+                        terms.add(term);
+                    }
+                }
+                int k = new int[] { 1, 3, 10, 50 }[random.nextInt(4)];
+                QueryStats stats = stats(shard, terms, staticScores);
+
+                List<Hit> expected = exhaustive(shard, stats, k);
+                List<Hit> actual = shard.search(stats, k);
+                actual.sort((a, b) -> Hit.compare(b, a));
+
+                String context = "seed " + seed + ", query " + terms + ", k " + k;
+                assertEquals(expected.size(), actual.size(), context);
+                Map<Integer, Float> exact = exactScores(shard, stats);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).score, actual.get(i).score, 1e-4f, context + ", rank " + i);
+                    Float score = exact.get(actual.get(i).id);
+                    assertNotNull(score, context + ": returned a masked or non-matching page");
+                    assertEquals(score, actual.get(i).score, 1e-4f, context + ", page " + actual.get(i).id);
+                }
+            }
+        }
+    }
+
+    // Zipf-like, so the common terms span several postings blocks
+    private static int skewed(Random random) {
+        double r = random.nextDouble();
+        return (int) (VOCABULARY * r * r);
+    }
+
+    private static void writeRandomSegment(Random random, Path file, int docs) throws IOException {
+        SegmentWriter writer = new SegmentWriter();
+        for (int ord = 0; ord < docs; ord++) {
+            int pageId = random.nextInt(PAGE_IDS);
+            int length = 1 + random.nextInt(400);
+            writer.addDocument(pageId, length, "http://example.com/" + pageId, "Page " + pageId, "");
+            // A few empty documents, as IndexWriter.deletePage writes
+            if (random.nextInt(20) == 0) {
+                continue;
+            }
+            for (int t = 0; t < VOCABULARY; t++) {
+                if (random.nextDouble() < 0.7 / (t + 1)) {
+                    writer.addPosting("t" + t, ord, 1 + random.nextInt(random.nextInt(10) == 0 ? 30 : 4));
+                }
+            }
+        }
+        writer.write(file);
+    }
+
+    private static StaticScores writeStaticScores(Random random, Path indexDir) throws IOException {
+        int[] ids = new int[PAGE_IDS];
+        float[] scores = new float[PAGE_IDS];
+        for (int i = 0; i < PAGE_IDS; i++) {
+            ids[i] = i;
+            scores[i] = random.nextInt(4) == 0 ? 0 : (float) (-Math.log(random.nextDouble()) / PAGE_IDS);
+        }
+        StaticScores.write(indexDir, ids, scores);
+        return StaticScores.load(indexDir);
+    }
+
+    private static QueryStats stats(IndexShard shard, List<String> terms, StaticScores staticScores) {
+        float[] idf = new float[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            idf[t] = Bm25.idf(shard.docCount(), Math.min(shard.docFreq(terms.get(t)), shard.docCount()));
+        }
+        float avgDocLength = Math.max(1f, (float) shard.totalLength() / shard.docCount());
+        return new QueryStats(terms, idf, avgDocLength, staticScores, System.nanoTime() + 3_600_000_000_000L);
+    }
+
+    /**
+     * Score of every live page matching at least one query term
+     */
+    private static Map<Integer, Float> exactScores(IndexShard shard, QueryStats stats) {
+        Map<Integer, Float> scores = new HashMap<>();
+        List<Segment> segments = shard.segments();
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            float[] termScores = new float[segment.docCount()];
+            boolean[] matched = new boolean[segment.docCount()];
+            for (int t = 0; t < stats.terms.size(); t++) {
+                PostingsCursor cursor = segment.postings(stats.terms.get(t));
+                if (cursor == null) {
+                    continue;
+                }
+                for (int ord = cursor.nextDoc(); ord != PostingsCursor.NO_MORE_DOCS; ord = cursor.nextDoc()) {
+                    termScores[ord] += Bm25.score(stats.idf[t], cursor.freq(), segment.docLength(ord),
+                            stats.avgDocLength);
+                    matched[ord] = true;
+                }
+            }
+            for (int ord = 0; ord < segment.docCount(); ord++) {
+                if (matched[ord] && !shard.isDeleted(s, ord)) {
+                    int pageId = segment.pageId(ord);
+                    scores.put(pageId, stats.staticScores.score(pageId) + termScores[ord]);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static List<Hit> exhaustive(IndexShard shard, QueryStats stats, int k) {
+        List<Hit> all = new ArrayList<>();
+        for (Map.Entry<Integer, Float> entry : exactScores(shard, stats).entrySet()) {
+            all.add(new Hit(entry.getKey(), entry.getValue(), null, null, null));
+        }
+        all.sort((a, b) -> Hit.compare(b, a));
+        return all.subList(0, Math.min(k, all.size()));
+    }
+
+    /**
+     * Rewrite a segment in the version 1 layout: term entries and skip entries
+     * without the maxTf and minLength score bounds
+     */
+    static void rewriteAsVersion1(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        int termCount = in.getInt(12);
+        int docsOffset = (int) in.getLong(24);
+        int termsOffset = (int) in.getLong(32);
+        int termBytesOffset = (int) in.getLong(40);
+        int postingsOffset = (int) in.getLong(48);
+        int storedOffset = (int) in.getLong(56);
+
+        ByteBuffer terms = ByteBuffer.allocate(termCount * 20);
+        ByteBuffer postings = ByteBuffer.allocate(storedOffset - postingsOffset);
+        for (int t = 0; t < termCount; t++) {
+            int entry = termsOffset + t * SegmentWriter.TERM_ENTRY_SIZE;
+            int docFreq = in.getInt(entry + 8);
+            int start = postingsOffset + (int) in.getLong(entry + 12);
+            int end = t + 1 < termCount
+                    ? postingsOffset + (int) in.getLong(entry + SegmentWriter.TERM_ENTRY_SIZE + 12)
+                    : storedOffset;
+            terms.putInt(in.getInt(entry)).putInt(in.getInt(entry + 4)).putInt(docFreq).putLong(postings.position());
+
+            int blocks = (docFreq + SegmentWriter.BLOCK_SIZE - 1) / SegmentWriter.BLOCK_SIZE;
+            for (int b = 0; b < blocks; b++) {
+                int skip = start + b * SegmentWriter.SKIP_ENTRY_SIZE;
+                postings.putInt(in.getInt(skip)).putInt(in.getInt(skip + 4));
+            }
+            int dataStart = start + blocks * SegmentWriter.SKIP_ENTRY_SIZE;
+            postings.put(in.array(), dataStart, end - dataStart);
+        }
+
+        int newTermBytesOffset = termsOffset + terms.capacity();
+        int newPostingsOffset = newTermBytesOffset + (postingsOffset - termBytesOffset);
+        int newStoredOffset = newPostingsOffset + postings.position();
+        ByteBuffer out = ByteBuffer.allocate(newStoredOffset + in.capacity() - storedOffset);
+        out.putInt(SegmentWriter.MAGIC).putInt(Segment.VERSION_1).putInt(in.getInt(8)).putInt(termCount)
+                .putLong(in.getLong(16));
+        out.putLong(docsOffset).putLong(termsOffset).putLong(newTermBytesOffset)
+                .putLong(newPostingsOffset).putLong(newStoredOffset);
+        out.put(in.array(), docsOffset, termsOffset - docsOffset);
+        out.put(terms.array());
+        out.put(in.array(), termBytesOffset, postingsOffset - termBytesOffset);
+        out.put(postings.array(), 0, postings.position());
+        out.put(in.array(), storedOffset, in.capacity() - storedOffset);
+        Files.write(file, out.array());
+    }
+}
@@ -0,0 +1,76 @@
+package site.meowcat.openlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexWriterTest {
+    @TempDir
+    Path dir;
+
+    private void createEmptyIndex() throws Exception {
+        Files.createDirectories(ShardedIndex.shardDir(dir, 0));
+        new IndexManifest(1, 1, List.of(List.of())).write(dir);
+    }
+
+    @Test
+    void commitAfterCrashDoesNotReuseAnOrphanedSegmentName() throws Exception {
+        createEmptyIndex();
+        // A segment flushed by a writer that crashed before publishing its manifest
+        Path orphan = ShardedIndex.shardDir(dir, 0).resolve(ShardedIndex.segmentName(1));
+        SegmentWriter crashed = new SegmentWriter();
+        crashed.add(1, "http://example.com/lost", "Lost", "never published");
+        crashed.write(orphan);
+
+        try (IndexWriter writer = IndexWriter.open(null, dir)) {
+            writer.addPage(2, "http://example.com/kept", "Kept", "committed after the crash");
+            writer.commit();
+            // Run the delete pass as if the grace period had passed
+            writer.deleteExpiredFiles(System.currentTimeMillis() + IndexWriter.DELETE_GRACE_MS);
+        }
+
+        assertFalse(Files.exists(orphan));
+        IndexManifest manifest = IndexManifest.read(dir);
+        for (String name : manifest.shards.get(0)) {
+            assertTrue(Files.exists(ShardedIndex.shardDir(dir, 0).resolve(name)), name);
+        }
+
+        ShardedIndex index = ShardedIndex.open(dir, ForkJoinPool.commonPool(), 1000, Map.of());
+        assertEquals(1, index.docCount());
+        List<Hit> hits = index.search("committed", 10);
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.get(0).id);
+        assertTrue(index.search("published", 10).isEmpty());
+    }
+
+    @Test
+    void mergedAwaySegmentsOutliveTheGracePeriodOnly() throws Exception {
+        createEmptyIndex();
+        try (IndexWriter writer = IndexWriter.open(null, dir)) {
+            writer.addPage(1, "http://example.com/a", "A", "first version");
+            writer.commit();
+        }
+        Path first = ShardedIndex.shardDir(dir, 0).resolve(ShardedIndex.segmentName(1));
+
+        try (IndexWriter writer = IndexWriter.open(null, dir)) {
+            writer.addPage(1, "http://example.com/a", "A", "second version");
+            writer.commit();
+            writer.deleteExpiredFiles(System.currentTimeMillis());
+            assertTrue(Files.exists(first));
+        }
+
+        ShardedIndex index = ShardedIndex.open(dir, ForkJoinPool.commonPool(), 1000, Map.of());
+        assertEquals(1, index.docCount());
+        assertEquals("http://example.com/a", index.search("second", 10).get(0).url);
+        assertTrue(index.search("first", 10).isEmpty());
+    }
+}
@@ -0,0 +1,228 @@
+package site.meowcat.openlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Segments written by SegmentWriter must read back unchanged through Segment and PostingsCursor
+ */
+class SegmentTest {
+    @TempDir
+    Path dir;
+
+    private Segment roundTrip(SegmentWriter writer) throws IOException {
+        Path file = dir.resolve(ShardedIndex.segmentName(1));
+        writer.write(file);
+        return Segment.open(file);
+    }
+
+    @Test
+    void postingsAndFrequenciesRoundTrip() throws IOException {
+        Random random = new Random(7);
+        int docs = 20_000;
+        SegmentWriter writer = new SegmentWriter();
+        for (int ord = 0; ord < docs; ord++) {
+            writer.addDocument(1000 + ord, 1 + ord % 97, "u", "t", "s");
+        }
+        // Dense, sparse (multi-byte deltas) and single-posting terms, with some large frequencies
+        List<int[]> dense = new ArrayList<>();
+        List<int[]> sparse = new ArrayList<>();
+        for (int ord = 0; ord < docs; ord++) {
+            if (random.nextInt(3) == 0) {
+                dense.add(new int[] { ord, 1 + random.nextInt(random.nextInt(50) == 0 ? 5000 : 5) });
+            }
+            if (ord % 6007 == 5) {
+                sparse.add(new int[] { ord, 200 + ord });
+            }
+        }
+        for (int[] posting : dense) {
+            writer.addPosting("dense", posting[0], posting[1]);
+        }
+        for (int[] posting : sparse) {
+            writer.addPosting("sparse", posting[0], posting[1]);
+        }
+        writer.addPosting("single", docs - 1, 3);
+
+        Segment segment = roundTrip(writer);
+        assertEquals(docs, segment.docCount());
+        assertEquals(3, segment.termCount());
+        assertPostings(dense, segment.postings("dense"));
+        assertPostings(sparse, segment.postings("sparse"));
+        assertPostings(List.<int[]>of(new int[] { docs - 1, 3 }), segment.postings("single"));
+        assertEquals(dense.size(), segment.docFreq("dense"));
+        assertEquals(0, segment.docFreq("absent"));
+        assertNull(segment.postings("absent"));
+
+        for (int ord : new int[] { 0, 1, 12_345, docs - 1 }) {
+            assertEquals(1000 + ord, segment.pageId(ord));
+            assertEquals(1 + ord % 97, segment.docLength(ord));
+        }
+    }
+
+    private static void assertPostings(List<int[]> expected, PostingsCursor cursor) {
+        assertEquals(expected.size(), cursor.docFreq());
+        int maxTf = 0;
+        for (int[] posting : expected) {
+            assertEquals(posting[0], cursor.nextDoc());
+            assertEquals(posting[1], cursor.freq());
+            maxTf = Math.max(maxTf, posting[1]);
+        }
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+        assertEquals(maxTf, cursor.maxTf());
+    }
+
+    @Test
+    void advanceCrossesBlockBoundaries() throws IOException {
+        int postings = 3 * SegmentWriter.BLOCK_SIZE + 17;
+        SegmentWriter writer = new SegmentWriter();
+        for (int ord = 0; ord < 2 * postings; ord++) {
+            writer.addDocument(ord, 10, "u", "t", "s");
+        }
+        // Every even ordinal, with tf = ord + 1 so positions are easy to check
+        for (int i = 0; i < postings; i++) {
+            writer.addPosting("even", 2 * i, 2 * i + 1);
+        }
+        Segment segment = roundTrip(writer);
+
+        PostingsCursor cursor = segment.postings("even");
+        assertEquals(4, cursor.blockCount());
+        int firstBlockLast = cursor.lastDoc(0);
+        assertEquals(2 * (SegmentWriter.BLOCK_SIZE - 1), firstBlockLast);
+
+        assertEquals(0, cursor.advance(0));
+        assertEquals(10, cursor.advance(9));
+        assertEquals(10, cursor.advance(10));
+        assertEquals(10, cursor.advance(3), "advance never moves backwards");
+        assertEquals(firstBlockLast, cursor.advance(firstBlockLast));
+        assertEquals(firstBlockLast + 1, cursor.freq());
+        assertEquals(firstBlockLast + 2, cursor.advance(firstBlockLast + 1));
+        assertEquals(firstBlockLast + 3, cursor.freq());
+        assertEquals(firstBlockLast + 4, cursor.nextDoc());
+
+        // Skip a whole block without stopping in it
+        int thirdBlockFirst = cursor.lastDoc(1) + 2;
+        assertEquals(thirdBlockFirst, cursor.advance(cursor.lastDoc(1) + 1));
+        assertEquals(thirdBlockFirst + 1, cursor.freq());
+
+        int last = 2 * (postings - 1);
+        assertEquals(last, cursor.lastDoc(cursor.blockCount() - 1));
+        assertEquals(last, cursor.advance(last - 1));
+        assertEquals(last + 1, cursor.freq());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+
+        PostingsCursor fresh = segment.postings("even");
+        assertEquals(last, fresh.advance(last));
+        assertEquals(PostingsCursor.NO_MORE_DOCS, segment.postings("even").advance(last + 1));
+    }
+
+    @Test
+    void blockBoundsCoverEveryPosting() throws IOException {
+        Random random = new Random(11);
+        SegmentWriter writer = new SegmentWriter();
+        int docs = 1000;
+        int[] lengths = new int[docs];
+        for (int ord = 0; ord < docs; ord++) {
+            lengths[ord] = 1 + random.nextInt(500);
+            writer.addDocument(ord, lengths[ord], "u", "t", "s");
+        }
+        for (int ord = 0; ord < docs; ord += 1 + random.nextInt(3)) {
+            writer.addPosting("term", ord, 1 + random.nextInt(20));
+        }
+        PostingsCursor cursor = roundTrip(writer).postings("term");
+
+        for (int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            int block = cursor.findBlock(doc);
+            assertTrue(doc <= cursor.lastDoc(block));
+            assertTrue(cursor.freq() <= cursor.blockMaxTf(block));
+            assertTrue(lengths[doc] >= cursor.blockMinLength(block));
+            assertTrue(cursor.blockMaxTf(block) <= cursor.maxTf());
+            assertTrue(cursor.blockMinLength(block) >= cursor.minLength());
+        }
+    }
+
+    @Test
+    void storedFieldsAndTermsRoundTrip() throws IOException {
+        String longContent = "word ".repeat(100);
+        SegmentWriter writer = new SegmentWriter();
+        writer.add(42, "http://example.com/a", "Hello World", "hello there, world hello");
+        writer.add(7, "https://münchen.de/straße", "Grüße", longContent);
+        writer.add(9, "http://example.com/empty", "", "");
+        Segment segment = roundTrip(writer);
+
+        assertEquals(3, segment.docCount());
+        Hit first = segment.hit(0, 1.5f);
+        assertEquals(42, first.id);
+        assertEquals(1.5f, first.score);
+        assertEquals("http://example.com/a", first.url);
+        assertEquals("Hello World", first.title);
+        assertEquals("hello there, world hello", first.snippet);
+
+        Hit second = segment.hit(1, 0);
+        assertEquals("https://münchen.de/straße", second.url);
+        assertEquals("Grüße", second.title);
+        assertEquals(SegmentWriter.snippet(longContent), second.snippet);
+        assertEquals(203, second.snippet.length());
+
+        Hit third = segment.hit(2, 0);
+        assertEquals("", third.title);
+        assertEquals("", third.snippet);
+        assertEquals(0, segment.docLength(2));
+
+        // Title terms count TITLE_BOOST times
+        PostingsCursor hello = segment.postings("hello");
+        assertEquals(0, hello.nextDoc());
+        assertEquals(Bm25.TITLE_BOOST + 2, hello.freq());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, hello.nextDoc());
+        assertEquals(segment.docLength(0) + segment.docLength(1), segment.totalLength());
+
+        // Terms come back in byte order
+        for (int i = 1; i < segment.termCount(); i++) {
+            assertTrue(Arrays.compareUnsigned(segment.term(i - 1).getBytes(StandardCharsets.UTF_8),
+                    segment.term(i).getBytes(StandardCharsets.UTF_8)) < 0);
+        }
+    }
+
+    @Test
+    void emptySegment() throws IOException {
+        Segment segment = roundTrip(new SegmentWriter());
+        assertEquals(0, segment.docCount());
+        assertEquals(0, segment.termCount());
+        assertEquals(0, segment.totalLength());
+        assertEquals(0, segment.docFreq("anything"));
+        assertNull(segment.postings("anything"));
+        assertEquals(0, new IndexShard(List.of(segment)).docCount());
+    }
+
+    @Test
+    void version1SegmentsStillRead() throws IOException {
+        SegmentWriter writer = new SegmentWriter();
+        for (int ord = 0; ord < 300; ord++) {
+            writer.addDocument(ord, 5, "u" + ord, "t", "s");
+            writer.addPosting("term", ord, 1 + ord % 4);
+        }
+        Path file = dir.resolve(ShardedIndex.segmentName(1));
+        writer.write(file);
+        BlockMaxWandTest.rewriteAsVersion1(file);
+        Segment segment = Segment.open(file);
+
+        PostingsCursor cursor = segment.postings("term");
+        assertEquals(Integer.MAX_VALUE, cursor.maxTf());
+        assertEquals(200, cursor.advance(200));
+        assertEquals(1, cursor.freq());
+        assertEquals(Integer.MAX_VALUE, cursor.blockMaxTf(cursor.findBlock(200)));
+        assertEquals("u299", segment.hit(299, 0).url);
+    }
+}
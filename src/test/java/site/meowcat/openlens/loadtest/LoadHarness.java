@@ -0,0 +1,257 @@
+package site.meowcat.openlens.loadtest;
+
+import site.meowcat.openlens.api.SearchAPI;
+import site.meowcat.openlens.archive.FetchArchive;
+import site.meowcat.openlens.config.DatabaseConfig;
+import site.meowcat.openlens.index.IndexWriter;
+import site.meowcat.openlens.index.ShardedIndex;
+import site.meowcat.openlens.scraper.WebScraper;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end throughput harness: crawls a synthetic web served from this
+ * process, then load-tests the search API over what was crawled.
+ * Uses a throwaway in-memory database and temporary index and archive
+ * directories, so it never touches the real crawl or the real internet.
+ *
+ * Usage: LoadHarness [key=value ...], where keys are the fields of
+ * {@link SyntheticWeb.Config} plus maxPages, searchThreads and searchSeconds.
+ * It lives with the tests, so run it on the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=site.meowcat.openlens.loadtest.LoadHarness -Dexec.args="maxPages=500"
+ * </pre>
+ */
+public class LoadHarness {
+    private int maxPages = 1000;
+    private int searchThreads = 8;
+    private int searchSeconds = 10;
+    private final SyntheticWeb.Config webConfig = new SyntheticWeb.Config();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        // Must happen before any class reads these properties
+        Path work = Files.createTempDirectory("openlens-load");
+        System.setProperty("openlens.db.url", "jdbc:h2:mem:openlens-load;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        System.setProperty("openlens.index.dir", work.resolve("index").toString());
+        System.setProperty("openlens.archive.dir", work.resolve("archive").toString());
+
+        LoadHarness harness = new LoadHarness();
+        harness.configure(args);
+        harness.run();
+        System.exit(0);
+    }
+
+    private void configure(String[] args) throws ReflectiveOperationException {
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            switch (kv[0]) {
+                case "maxPages":
+                    maxPages = Integer.parseInt(kv[1]);
+                    break;
+                case "searchThreads":
+                    searchThreads = Integer.parseInt(kv[1]);
+                    break;
+                case "searchSeconds":
+                    searchSeconds = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    java.lang.reflect.Field field = SyntheticWeb.Config.class.getField(kv[0]);
+                    if (field.getType() == int.class) {
+                        field.setInt(webConfig, Integer.parseInt(kv[1]));
+                    } else if (field.getType() == long.class) {
+                        field.setLong(webConfig, Long.parseLong(kv[1]));
+                    } else {
+                        field.setDouble(webConfig, Double.parseDouble(kv[1]));
+                    }
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        ExecutorService sampler = Executors.newSingleThreadExecutor();
+        sampler.execute(this::sampleHeap);
+
+        SyntheticWeb web = new SyntheticWeb(webConfig, loadBlacklistTerms());
+        web.start();
+        try {
+            crawl(web);
+            search(web);
+        } finally {
+            web.stop();
+            sampler.shutdownNow();
+        }
+    }
+
+    private void crawl(SyntheticWeb web) throws Exception {
+        WebScraper scraper = new WebScraper();
+        IndexWriter indexWriter = IndexWriter.open(DatabaseConfig.getInstance(),
+                Paths.get(ShardedIndex.DEFAULT_DIR));
+        scraper.setIndexWriter(indexWriter);
+        FetchArchive archive = new FetchArchive(Paths.get(FetchArchive.DEFAULT_DIR));
+        scraper.setArchive(archive);
+        for (String seed : web.seedUrls()) {
+            scraper.queueUrl(seed);
+        }
+
+        List<Long> fetchNanos = new ArrayList<>();
+        int succeeded = 0;
+        long start = System.nanoTime();
+        while (fetchNanos.size() < maxPages) {
+            String url = scraper.getNextUrlToScrape();
+            if (url == null) {
+                break;
+            }
+            long t0 = System.nanoTime();
+            WebScraper.ScrapeResult result = scraper.scrapeUrl(url);
+            if (result.success) {
+                succeeded++;
+                for (String link : result.discoveredLinks) {
+                    scraper.queueUrl(link, result.linkDepth);
+                }
+            }
+            indexWriter.maybeCommit();
+            fetchNanos.add(System.nanoTime() - t0);
+        }
+        indexWriter.close();
+        archive.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = fetchNanos.stream().mapToLong(Long::longValue).toArray();
+        report("Crawl", new String[] {
+                "pages attempted: " + latencies.length + " (" + succeeded + " stored)",
+                String.format("throughput:      %.1f pages/sec", latencies.length / seconds),
+                "page latency:    " + percentiles(latencies),
+                "peak heap:       " + (peakHeap.get() >> 20) + " MB" });
+    }
+
+    private void search(SyntheticWeb web) throws Exception {
+        peakHeap.set(0);
+        SearchAPI api = new SearchAPI("127.0.0.1", 0);
+        api.start();
+        String base = "http://127.0.0.1:" + api.port() + "/api/search?q=";
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        long[][] perThread = new long[searchThreads][];
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger shed = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(searchSeconds);
+
+        ExecutorService clients = Executors.newFixedThreadPool(searchThreads);
+        for (int t = 0; t < searchThreads; t++) {
+            int thread = t;
+            clients.execute(() -> {
+                Random random = new Random(webConfig.seed + thread);
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    String query = random.nextBoolean() ? web.word(random) : web.word(random) + " " + web.word(random);
+                    HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(base + URLEncoder.encode(query, StandardCharsets.UTF_8))).build();
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 503) {
+                            shed.incrementAndGet();
+                        } else if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    latencies.add(System.nanoTime() - t0);
+                }
+                perThread[thread] = latencies.stream().mapToLong(Long::longValue).toArray();
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(searchSeconds + 60L, TimeUnit.SECONDS);
+        api.stop();
+
+        long[] latencies = Arrays.stream(perThread).flatMapToLong(Arrays::stream).toArray();
+        report("Search", new String[] {
+                "requests:        " + latencies.length + " (" + errors.get() + " errors, "
+                        + shed.get() + " shed) from " + searchThreads + " clients",
+                String.format("throughput:      %.1f queries/sec", latencies.length / (double) searchSeconds),
+                "query latency:   " + percentiles(latencies),
+                "peak heap:       " + (peakHeap.get() >> 20) + " MB" });
+    }
+
+    private void sampleHeap() {
+        while (!Thread.currentThread().isInterrupted()) {
+            peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String percentiles(long[] nanos) {
+        if (nanos.length == 0) {
+            return "n/a";
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                sorted[(int) (sorted.length * 0.50)] / 1e6,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static void report(String title, String[] lines) {
+        System.out.println("\n=== Load Harness: " + title + " ===");
+        for (String line : lines) {
+            System.out.println("  " + line);
+        }
+    }
+
+    private static List<String> loadBlacklistTerms() {
+        List<String> terms = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader("blacklist.txt"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim().toLowerCase();
+                if (!line.isEmpty()) {
+                    terms.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load blacklist.txt, no pages will be blacklisted: "
+                    + e.getMessage());
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,211 @@
+package site.meowcat.openlens.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A deterministic fake web served from this process.
+ * Every host is a separate HTTP server on its own loopback address
+ * (127.0.0.2, 127.0.0.3, ...), so the crawler counts them as distinct hosts,
+ * and every page is generated on request from the seed, so the same
+ * configuration always produces the same site graph. Where only 127.0.0.1
+ * can be bound, hosts fall back to separate ports on it and share one host row.
+ */
+public class SyntheticWeb {
+
+    public static class Config {
+        public int hosts = 8;
+        public int pagesPerHost = 250;
+        public int fanout = 12;
+        public int pageWords = 400;
+        public int imagesPerPage = 3;
+        public double sameHostLinkRate = 0.7;
+        public int slowHosts = 1;
+        public int slowMs = 200;
+        public double errorRate = 0.03;
+        public double blacklistRate = 0.02;
+        public long seed = 42;
+    }
+
+    private static final int VOCABULARY_SIZE = 5000;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "ta", "zo", "pe", "vi", "su", "ko", "ra", "di", "mu", "se", "no" };
+
+    private final Config config;
+    private final List<String> blacklistTerms;
+    private final String[] vocabulary;
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+
+    public SyntheticWeb(Config config, List<String> blacklistTerms) {
+        this.config = config;
+        this.blacklistTerms = blacklistTerms;
+        this.vocabulary = buildVocabulary(config.seed);
+    }
+
+    public void start() throws IOException {
+        for (int h = 0; h < config.hosts; h++) {
+            int host = h;
+            HttpServer server;
+            try {
+                server = HttpServer.create(new InetSocketAddress("127.0.0." + (h + 2), 0), 128);
+            } catch (IOException e) {
+                System.err.println("Warning: Could not bind 127.0.0." + (h + 2) + ", using 127.0.0.1 instead");
+                server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+            }
+            server.createContext("/", exchange -> handle(host, exchange));
+            server.setExecutor(executor);
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    public void stop() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * The front page of every host, to seed the crawl with
+     */
+    public List<String> seedUrls() {
+        List<String> seeds = new ArrayList<>();
+        for (int h = 0; h < servers.size(); h++) {
+            seeds.add(pageUrl(h, 0));
+        }
+        return seeds;
+    }
+
+    /**
+     * Words that appear in generated pages, for building realistic search queries
+     */
+    public String word(Random random) {
+        return vocabulary[zipf(random)];
+    }
+
+    private String pageUrl(int host, int page) {
+        InetSocketAddress address = servers.get(host).getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/page/" + page;
+    }
+
+    private void handle(int host, HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (!path.startsWith("/page/")) {
+                respond(exchange, 404, "text/plain", "not found");
+                return;
+            }
+            int page;
+            try {
+                page = Integer.parseInt(path.substring("/page/".length()));
+            } catch (NumberFormatException e) {
+                respond(exchange, 404, "text/plain", "not found");
+                return;
+            }
+
+            if (host < config.slowHosts) {
+                try {
+                    Thread.sleep(config.slowMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            Random random = new Random(mix(config.seed * 1_000_003L + host * 100_003L + page));
+            if (page >= config.pagesPerHost || random.nextDouble() < config.errorRate) {
+                respond(exchange, page >= config.pagesPerHost ? 404 : 500, "text/plain", "error");
+                return;
+            }
+            respond(exchange, 200, "text/html; charset=UTF-8", renderPage(host, page, random));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String renderPage(int host, int page, Random random) {
+        StringBuilder html = new StringBuilder(config.pageWords * 8 + 1024);
+        html.append("<html><head><title>");
+        for (int i = 0; i < 4; i++) {
+            html.append(word(random)).append(' ');
+        }
+        html.append("</title></head><body><h1>Host ").append(host).append(" page ").append(page).append("</h1><p>");
+
+        boolean blacklisted = !blacklistTerms.isEmpty() && random.nextDouble() < config.blacklistRate;
+        int blacklistAt = blacklisted ? random.nextInt(config.pageWords) : -1;
+        for (int i = 0; i < config.pageWords; i++) {
+            if (i == blacklistAt) {
+                html.append(blacklistTerms.get(random.nextInt(blacklistTerms.size()))).append(' ');
+            }
+            html.append(word(random)).append(i % 60 == 59 ? "</p><p>" : " ");
+        }
+        html.append("</p><ul>");
+
+        for (int i = 0; i < config.fanout; i++) {
+            int targetHost = random.nextDouble() < config.sameHostLinkRate ? host : random.nextInt(servers.size());
+            // Skew links towards low page numbers so some pages become hubs
+            int targetPage = (int) (config.pagesPerHost * Math.pow(random.nextDouble(), 2));
+            html.append("<li><a href=\"").append(pageUrl(targetHost, targetPage)).append("\">")
+                    .append(word(random)).append("</a></li>");
+        }
+        html.append("</ul>");
+
+        for (int i = 0; i < config.imagesPerPage; i++) {
+            int image = random.nextInt(50);
+            html.append("<img src=\"/img/").append(image).append(".png\" alt=\"").append(word(random)).append("\">");
+        }
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Nearby seeds give java.util.Random nearly identical first draws, so scramble them
+    private static long mix(long seed) {
+        seed ^= seed >>> 33;
+        seed *= 0xff51afd7ed558ccdL;
+        seed ^= seed >>> 33;
+        seed *= 0xc4ceb9fe1a85ec53L;
+        return seed ^ (seed >>> 33);
+    }
+
+    // Zipf-like skew so a few words are very common, like real text
+    private int zipf(Random random) {
+        double r = random.nextDouble();
+        return (int) (VOCABULARY_SIZE * r * r * r);
+    }
+
+    private static String[] buildVocabulary(long seed) {
+        Random random = new Random(seed);
+        String[] words = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            words[i] = word.toString() + i;
+        }
+        return words;
+    }
+}
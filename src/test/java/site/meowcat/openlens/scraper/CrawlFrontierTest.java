@@ -0,0 +1,60 @@
+package site.meowcat.openlens.scraper;
+
+import org.junit.jupiter.api.Test;
+import site.meowcat.openlens.config.DatabaseConfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlFrontierTest {
+    private static final int HOST = -1;
+
+    private static CrawlFrontier frontier() {
+        return new CrawlFrontier(DatabaseConfig.getInstance());
+    }
+
+    @Test
+    void queuedPageThatGainsInlinksOvertakesOneThatGainedNone() {
+        for (String winner : new String[] { "http://a.example/", "http://b.example/" }) {
+            CrawlFrontier frontier = frontier();
+            frontier.offer("http://a.example/", 1, HOST, CrawlFrontier.priority(0, 2));
+            frontier.offer("http://b.example/", 2, HOST, CrawlFrontier.priority(0, 2));
+
+            frontier.reprioritize(winner.contains("a.") ? 1 : 2, CrawlFrontier.priority(3, 2));
+
+            assertEquals(winner, frontier.next());
+            assertFalse(winner.equals(frontier.next()), "a replaced entry must not be handed out twice");
+            assertNull(frontier.next());
+        }
+    }
+
+    @Test
+    void pageMovedCloserToTheSeedsOvertakesDeeperOnes() {
+        CrawlFrontier frontier = frontier();
+        frontier.offer("http://a.example/", 1, HOST, CrawlFrontier.priority(1, 3));
+        frontier.offer("http://b.example/", 2, HOST, CrawlFrontier.priority(1, 2));
+        frontier.offer("http://c.example/", 3, HOST, CrawlFrontier.priority(1, 3));
+
+        frontier.reprioritize(3, CrawlFrontier.priority(1, 1));
+
+        assertEquals("http://c.example/", frontier.next());
+        assertEquals("http://b.example/", frontier.next());
+        assertEquals("http://a.example/", frontier.next());
+        assertNull(frontier.next());
+    }
+
+    @Test
+    void reprioritizeIgnoresUrlsNotHeldInMemory() {
+        CrawlFrontier frontier = frontier();
+        frontier.offer("http://a.example/", 1, HOST, CrawlFrontier.priority(0, 1));
+        frontier.reprioritize(99, CrawlFrontier.priority(10, 0));
+
+        assertTrue(frontier.contains(1));
+        assertFalse(frontier.contains(99));
+        assertEquals(1, frontier.size());
+        assertEquals("http://a.example/", frontier.next());
+        assertFalse(frontier.contains(1));
+    }
+}
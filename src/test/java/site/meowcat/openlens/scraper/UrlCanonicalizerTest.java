@@ -0,0 +1,72 @@
+package site.meowcat.openlens.scraper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+    @Test
+    void lowercasesSchemeAndHostAndDropsFragment() {
+        assertEquals("https://example.com/Path",
+                canonicalizer.canonicalize("HTTPS://Example.COM./Path#section"));
+    }
+
+    @Test
+    void dropsDefaultPortsOnly() {
+        assertEquals("http://example.com/", canonicalizer.canonicalize("http://example.com:80"));
+        assertEquals("https://example.com/", canonicalizer.canonicalize("https://example.com:443/"));
+        assertEquals("http://example.com:443/", canonicalizer.canonicalize("http://example.com:443/"));
+        assertEquals("http://example.com:8080/a", canonicalizer.canonicalize("http://example.com:8080/a/"));
+    }
+
+    @Test
+    void stripsTrackingParamsAndSortsTheRest() {
+        assertEquals("http://example.com/a?b=2&c=3",
+                canonicalizer.canonicalize("http://example.com/a?utm_source=x&c=3&gclid=1&b=2&UTM_Medium=y"));
+        assertEquals("http://example.com/a", canonicalizer.canonicalize("http://example.com/a?fbclid=abc"));
+    }
+
+    @Test
+    void resolvesDotSegments() {
+        assertEquals("http://example.com/b/d", canonicalizer.canonicalize("http://example.com/a/../b/./c/../d/"));
+        assertEquals("http://example.com/x", canonicalizer.canonicalize("http://example.com/../../x"));
+    }
+
+    @Test
+    void keepsLeadingDoubleSlashPathOnTheSameHost() {
+        assertEquals("http://example.com/foo/bar", canonicalizer.canonicalize("http://Example.com:80//foo/bar/"));
+        assertEquals("http://example.com/foo", canonicalizer.canonicalize("http://example.com///foo"));
+    }
+
+    @Test
+    void acceptsUnderscoreHosts() {
+        assertEquals("http://my_host.example.com/a", canonicalizer.canonicalize("http://My_Host.example.com/a"));
+        assertEquals("http://user@my_host.example.com:8080/a",
+                canonicalizer.canonicalize("http://user@my_host.example.com:8080/a"));
+    }
+
+    @Test
+    void convertsInternationalHostsToAscii() {
+        assertEquals("https://xn--mnchen-3ya.de/x", canonicalizer.canonicalize("https://münchen.de/x"));
+        assertEquals("https://xn--mnchen-3ya.de/x", canonicalizer.canonicalize("https://M%C3%BCnchen.de:443/x"));
+    }
+
+    @Test
+    void escapesIllegalCharacters() {
+        assertEquals("http://example.com/a%20b?q=x%7Cy", canonicalizer.canonicalize("http://example.com/a b?q=x|y"));
+    }
+
+    @Test
+    void rejectsNonHttpAndRelativeUrls() {
+        assertNull(canonicalizer.canonicalize(null));
+        assertNull(canonicalizer.canonicalize("mailto:someone@example.com"));
+        assertNull(canonicalizer.canonicalize("ftp://example.com/file"));
+        assertNull(canonicalizer.canonicalize("/relative/path"));
+        assertNull(canonicalizer.canonicalize("http:///nohost"));
+        assertNull(canonicalizer.canonicalize("http://bad host.example.com/"));
+        assertNull(canonicalizer.canonicalize("http://my_host.example.com:http/"));
+    }
+}